@@ -0,0 +1,71 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fixed corpus of real class files taken from the running JDK.
+ * @author Andrew Porokhin
+ */
+final class ClassCorpus {
+    /** Small class with a short constant pool. */
+    static final String SMALL = "java/lang/Object";
+    /** Class with several thousands of constant pool entries. */
+    static final String HUGE_CONSTANT_POOL = "java/lang/Character$UnicodeBlock";
+    /** Class with many lambdas: MethodHandle, MethodType and InvokeDynamic constants. */
+    static final String LAMBDA_HEAVY = "java/util/stream/Collectors";
+
+    private ClassCorpus() {
+    }
+
+    /**
+     * Load class file bytes.
+     * @param className internal class name, e.g. <code>java/lang/Object</code>.
+     * @return class file bytes.
+     * @throws IOException if the class file can't be read.
+     */
+    static byte[] load(String className) throws IOException {
+        InputStream in = ClassLoader.getSystemResourceAsStream(className + ".class");
+        if (in == null) {
+            throw new IOException("Class file not found: " + className);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(16384);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.bench;
+
+import org.aalabs.sjcp.ClassFileVisitor;
+import org.aalabs.sjcp.ClassParser;
+import org.aalabs.sjcp.JavaClassFile;
+import org.aalabs.sjcp.JavaClassHeader;
+import org.aalabs.sjcp.JavaClassReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the {@link JavaClassReader} entry points and the reusable {@link ClassParser}
+ * on the same class file.
+ * Run with <code>-prof gc</code> to see the allocation rate and bytes per operation.
+ * @author Andrew Porokhin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntryPointBenchmark {
+    @Param({ClassCorpus.SMALL, ClassCorpus.HUGE_CONSTANT_POOL, ClassCorpus.LAMBDA_HEAVY})
+    public String className;
+
+    private byte[] bytes;
+    private ByteBuffer buffer;
+    private Path file;
+    private final ClassParser parser = new ClassParser();
+    private final ClassFileVisitor visitor = new ClassFileVisitor() {
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        bytes = ClassCorpus.load(className);
+        buffer = ByteBuffer.wrap(bytes);
+        file = Files.createTempFile("sjcp-bench", ".class");
+        Files.write(file, bytes);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public JavaClassFile stream() throws IOException {
+        return JavaClassReader.processStream(new ByteArrayInputStream(bytes));
+    }
+
+    @Benchmark
+    public JavaClassFile file() {
+        return JavaClassReader.processFile(file);
+    }
+
+    @Benchmark
+    public JavaClassFile buffer() {
+        return JavaClassReader.processBuffer(buffer);
+    }
+
+    @Benchmark
+    public JavaClassFile bufferLazy() {
+        return JavaClassReader.processBuffer(buffer, true);
+    }
+
+    @Benchmark
+    public JavaClassHeader header() {
+        return JavaClassReader.processHeader(buffer);
+    }
+
+    @Benchmark
+    public int parser() {
+        return parser.parse(buffer, visitor);
+    }
+}
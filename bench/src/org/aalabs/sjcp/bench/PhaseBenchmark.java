@@ -0,0 +1,104 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.bench;
+
+import org.aalabs.sjcp.JavaAttributeInfo;
+import org.aalabs.sjcp.JavaClassFile;
+import org.aalabs.sjcp.JavaClassHeader;
+import org.aalabs.sjcp.JavaClassReader;
+import org.aalabs.sjcp.JavaMemberInfo;
+import org.aalabs.sjcp.cp.LazyConstantPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent in the separate parsing phases.
+ * <ul>
+ * <li>header: magic, versions, class and super class names;
+ * <li>constantPoolIndex: walk of the constant pool by tag and length;
+ * <li>constantPoolDecode: decoding of all entries of the indexed pool;
+ * <li>members: lazy parse plus walk of the fields, methods and their attributes,
+ *     subtract <code>constantPoolIndex</code> to get the members part.
+ * </ul>
+ * @author Andrew Porokhin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhaseBenchmark {
+    @Param({ClassCorpus.SMALL, ClassCorpus.HUGE_CONSTANT_POOL, ClassCorpus.LAMBDA_HEAVY})
+    public String className;
+
+    private ByteBuffer buffer;
+    private int constantPoolCount;
+    private LazyConstantPool constantPool;
+
+    @Setup
+    public void setUp() throws IOException {
+        buffer = ByteBuffer.wrap(ClassCorpus.load(className));
+        constantPoolCount = buffer.getShort(8) & 0xFFFF;
+        constantPool = LazyConstantPool.index(buffer, 10, constantPoolCount);
+    }
+
+    @Benchmark
+    public JavaClassHeader header() {
+        return JavaClassReader.processHeader(buffer);
+    }
+
+    @Benchmark
+    public LazyConstantPool constantPoolIndex() {
+        return LazyConstantPool.index(buffer, 10, constantPoolCount);
+    }
+
+    @Benchmark
+    public void constantPoolDecode(Blackhole blackhole) {
+        for (int i = 1; i < constantPool.getCount(); i++) {
+            blackhole.consume(constantPool.getConstantPoolInfo(i));
+        }
+    }
+
+    @Benchmark
+    public void members(Blackhole blackhole) {
+        JavaClassFile classFile = JavaClassReader.processBuffer(buffer, true);
+        for (JavaMemberInfo field : classFile.getFields()) {
+            blackhole.consume(field.getAttributes());
+        }
+        for (JavaMemberInfo method : classFile.getMethods()) {
+            for (JavaAttributeInfo attribute : method.getAttributes()) {
+                blackhole.consume(attribute.getLength());
+            }
+        }
+        blackhole.consume(classFile.getAttributes());
+    }
+}
@@ -0,0 +1,4 @@
+package org.aalabs.sjcp.bench.jmh_generated;
+public class EntryPointBenchmark_jmhType extends EntryPointBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Metrics emitted as JDK Flight Recorder events. Nothing is measured unless a recording
+ * with any of the events enabled is running.
+ * <p>
+ * Class and failure events are enabled by default, phase events are disabled by default
+ * because of their volume; enable <code>org.aalabs.sjcp.ParsePhase</code> in the recording
+ * settings to get them.
+ * <p>
+ * Not part of the main Java 8 sources, built into a separate jar by the <code>jfr-jar</code>
+ * target. Needs Java 8u262 or later at runtime.
+ * @author Andrew Porokhin
+ */
+public class JfrParseMetrics extends ParseMetrics {
+    @Name("org.aalabs.sjcp.ClassParsed")
+    @Label("Class Parsed")
+    @Category("SimpleJCP")
+    @StackTrace(false)
+    static class ClassParsedEvent extends Event {
+        @Label("Length")
+        @DataAmount
+        long length;
+
+        @Label("Parse Time")
+        @Timespan
+        long parseTime;
+
+        @Label("Constants")
+        int constants;
+    }
+
+    @Name("org.aalabs.sjcp.ParsePhase")
+    @Label("Parse Phase")
+    @Category("SimpleJCP")
+    @StackTrace(false)
+    @Enabled(false)
+    static class ParsePhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Phase Time")
+        @Timespan
+        long phaseTime;
+    }
+
+    @Name("org.aalabs.sjcp.ParseFailure")
+    @Label("Parse Failure")
+    @Category("SimpleJCP")
+    @Description("Class file can't be read or parsed")
+    static class ParseFailureEvent extends Event {
+        @Label("Cause")
+        String cause;
+
+        @Label("Message")
+        String message;
+    }
+
+    private static final EventType CLASS_PARSED = EventType.getEventType(ClassParsedEvent.class);
+    private static final EventType PARSE_PHASE = EventType.getEventType(ParsePhaseEvent.class);
+    private static final EventType PARSE_FAILURE = EventType.getEventType(ParseFailureEvent.class);
+
+    /** Constants of the last class read by the thread, reported with the class event. */
+    private final ThreadLocal<int[]> lastConstants = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    @Override
+    public boolean isEnabled() {
+        return CLASS_PARSED.isEnabled() || PARSE_PHASE.isEnabled() || PARSE_FAILURE.isEnabled();
+    }
+
+    @Override
+    public void classParsed(int length, long nanos) {
+        int[] constants = lastConstants.get();
+        ClassParsedEvent event = new ClassParsedEvent();
+        if (event.isEnabled()) {
+            event.length = length;
+            event.parseTime = nanos;
+            event.constants = constants[0];
+            event.commit();
+        }
+        constants[0] = 0;
+    }
+
+    @Override
+    public void phaseCompleted(Phase phase, long nanos) {
+        ParsePhaseEvent event = new ParsePhaseEvent();
+        if (event.isEnabled()) {
+            event.phase = phase.name();
+            event.phaseTime = nanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void constantsRead(int[] countsByTag) {
+        int count = 0;
+        for (int tagCount : countsByTag) {
+            count += tagCount;
+        }
+        lastConstants.get()[0] = count;
+    }
+
+    @Override
+    public void classFailed(Throwable cause) {
+        ParseFailureEvent event = new ParseFailureEvent();
+        if (event.isEnabled()) {
+            event.cause = cause.getClass().getName();
+            event.message = cause.getMessage();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking reader of Java class files.
+ * <p>
+ * Files are read with {@link AsynchronousFileChannel}, so no thread waits for the I/O, and
+ * parsed in the executor once read. At most <code>maxConcurrency</code> files are open and
+ * being read at the same time, the other requests wait in a queue; this keeps thousands of
+ * requests from exhausting file descriptors and saturating the disk.
+ * <p>
+ * I/O and parse errors complete the returned future exceptionally.
+ * @author Andrew Porokhin
+ */
+public class AsyncClassReader {
+    private static final Logger logger = Logger.getLogger(AsyncClassReader.class.getName());
+
+    /** Default number of files read at the same time. */
+    public static final int DEFAULT_MAX_CONCURRENCY = 64;
+
+    private final int maxConcurrency;
+    private final boolean lazyConstantPool;
+    private final Executor executor;
+    private final AtomicInteger active = new AtomicInteger();
+    private final Queue<ReadRequest> pending = new ConcurrentLinkedQueue<ReadRequest>();
+
+    /**
+     * Create reader with {@link #DEFAULT_MAX_CONCURRENCY} that parses in the common fork-join pool.
+     */
+    public AsyncClassReader() {
+        this(DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * Create reader that parses in the common fork-join pool.
+     * @param maxConcurrency maximum number of files read at the same time.
+     */
+    public AsyncClassReader(int maxConcurrency) {
+        this(maxConcurrency, false, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create reader.
+     * @param maxConcurrency maximum number of files read at the same time.
+     * @param lazyConstantPool <code>true</code> to decode constant pool entries on demand.
+     * @param executor executor that parses the classes.
+     */
+    public AsyncClassReader(int maxConcurrency, boolean lazyConstantPool, Executor executor) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Max concurrency must be positive: " + maxConcurrency);
+        }
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.lazyConstantPool = lazyConstantPool;
+        this.executor = executor;
+    }
+
+    /**
+     * Read Java class from the file.
+     * If the future is cancelled before the read is started, the file is not opened.
+     * @param path path to the class file.
+     * @return future of the parsed class.
+     */
+    public CompletableFuture<JavaClassFile> read(Path path) {
+        ReadRequest request = new ReadRequest(path);
+        pending.add(request);
+        drain();
+        return request.future;
+    }
+
+    /**
+     * Read Java classes from the files.
+     * @param paths paths to the class files.
+     * @return future of the parsed classes in the order of the paths, completes exceptionally
+     *         with the first failure.
+     */
+    public CompletableFuture<List<JavaClassFile>> readAll(Collection<Path> paths) {
+        final List<CompletableFuture<JavaClassFile>> futures = new ArrayList<CompletableFuture<JavaClassFile>>(paths.size());
+        for (Path path : paths) {
+            futures.add(read(path));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(new Function<Void, List<JavaClassFile>>() {
+                    @Override
+                    public List<JavaClassFile> apply(Void ignored) {
+                        List<JavaClassFile> classes = new ArrayList<JavaClassFile>(futures.size());
+                        for (CompletableFuture<JavaClassFile> future : futures) {
+                            classes.add(future.join());
+                        }
+                        return classes;
+                    }
+                });
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * @return number of files being read now.
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * @return number of requests waiting for a free slot.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Start the pending requests while there are free slots.
+     */
+    private void drain() {
+        while (!pending.isEmpty()) {
+            int count = active.get();
+            if (count >= maxConcurrency) {
+                return;
+            }
+            if (!active.compareAndSet(count, count + 1)) {
+                continue;
+            }
+            ReadRequest request = pending.poll();
+            // Requests failed while starting are released here, not by the request itself,
+            // so a long queue of missing files doesn't recurse.
+            if (request == null || !request.start()) {
+                active.decrementAndGet();
+            }
+        }
+    }
+
+    private final class ReadRequest implements CompletionHandler<Integer, Void> {
+        private final Path path;
+        private final CompletableFuture<JavaClassFile> future = new CompletableFuture<JavaClassFile>();
+        private AsynchronousFileChannel channel;
+        private ByteBuffer buffer;
+
+        ReadRequest(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * @return <code>true</code> if the read is started and the slot is released on completion.
+         */
+        boolean start() {
+            if (future.isDone()) {
+                return false;
+            }
+            try {
+                channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("File is too large: " + path);
+                }
+                buffer = ByteBuffer.allocate((int) size);
+                channel.read(buffer, 0, null, this);
+                return true;
+            } catch (IOException | RuntimeException ex) {
+                close();
+                fail(ex);
+                return false;
+            }
+        }
+
+        @Override
+        public void completed(Integer read, Void attachment) {
+            if (buffer.hasRemaining()) {
+                if (read < 0) {
+                    // The file was truncated after its size was taken.
+                    failed(new EOFException("Unexpected end of the class file: " + path), attachment);
+                    return;
+                }
+                try {
+                    channel.read(buffer, buffer.position(), null, this);
+                } catch (RuntimeException ex) {
+                    failed(ex, attachment);
+                }
+                return;
+            }
+
+            release();
+            buffer.flip();
+            final ByteBuffer data = buffer;
+            buffer = null;
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            future.complete(JavaClassReader.processBuffer(data, lazyConstantPool));
+                        } catch (RuntimeException ex) {
+                            // Already reported to the metrics by the parser.
+                            future.completeExceptionally(ex);
+                        }
+                    }
+                });
+            } catch (RuntimeException ex) {
+                fail(ex);
+            }
+        }
+
+        @Override
+        public void failed(Throwable cause, Void attachment) {
+            buffer = null;
+            release();
+            fail(cause);
+        }
+
+        private void release() {
+            close();
+            active.decrementAndGet();
+            drain();
+        }
+
+        private void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    logger.log(Level.WARNING, "Unable to close " + path, ex);
+                }
+                channel = null;
+            }
+        }
+
+        private void fail(Throwable cause) {
+            JavaClassReader.getMetrics().classFailed(cause);
+            future.completeExceptionally(cause);
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp;
+
+import org.aalabs.sjcp.cp.ConstantPoolInfo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fast structural validator of class files.
+ * <p>
+ * Checks in one pass over the data, without creating any objects for a valid class, that
+ * every structure fits in the data, every constant pool tag is known, UTF8 constants are
+ * well-formed, every constant pool
+ * index used by the constant pool, the class header, the members and the attributes is in
+ * range and points to the entry of the expected type, and that there are no extra bytes
+ * after the class. A class that passes the validation can be parsed by
+ * {@link JavaClassReader} without running past its data or misreading the constant pool.
+ * Code and attribute contents are not checked.
+ * <p>
+ * Failures are returned as {@link ParseFailure} results, no exceptions are thrown, so
+ * batches with many broken classes are checked at the same speed as clean ones.
+ * @author Andrew Porokhin
+ */
+public final class ClassFileValidator {
+    private static final ThreadLocal<ClassFileValidator> validators = new ThreadLocal<ClassFileValidator>() {
+        @Override
+        protected ClassFileValidator initialValue() {
+            return new ClassFileValidator();
+        }
+    };
+
+    private byte[] tags = new byte[256];
+    private int[] offsets = new int[256];
+    private ByteBuffer buffer;
+    private int start;
+    private int limit;
+    private int count;
+
+    private ClassFileValidator() {
+    }
+
+    /**
+     * Validate the class file.
+     * @param buffer buffer with the class file from the buffer position to the limit.
+     * @return failure or <code>null</code> if the class file is valid.
+     */
+    public static ParseFailure validate(ByteBuffer buffer) {
+        ClassFileValidator validator = validators.get();
+        try {
+            validator.check(buffer.order() == ByteOrder.BIG_ENDIAN
+                    ? buffer : buffer.duplicate().order(ByteOrder.BIG_ENDIAN));
+            return null;
+        } catch (Invalid ex) {
+            return ex.failure;
+        } finally {
+            validator.buffer = null;
+        }
+    }
+
+    private void check(ByteBuffer buffer) {
+        this.buffer = buffer;
+        start = buffer.position();
+        limit = buffer.limit();
+
+        need(start, 10);
+        if (buffer.getInt(start) != 0xCAFEBABE) {
+            throw fail(ParseFailure.Kind.BAD_MAGIC, start, "Incorrect Java Class File, wrong signature");
+        }
+        count = u2(start + 8);
+        if (tags.length < count) {
+            tags = new byte[Math.max(count, tags.length * 2)];
+            offsets = new int[tags.length];
+        }
+
+        int offset = readConstants(start + 10);
+        checkConstants();
+
+        need(offset, 8);
+        ref(offset + 2, ConstantPoolInfo.CONSTANT_CLASS_INFO, "this_class", -1);
+        if (u2(offset + 4) != 0) {
+            ref(offset + 4, ConstantPoolInfo.CONSTANT_CLASS_INFO, "super_class", -1);
+        }
+        int interfaces = u2(offset + 6);
+        offset += 8;
+        need(offset, 2L * interfaces);
+        for (int i = 0; i < interfaces; i++) {
+            ref(offset + 2 * i, ConstantPoolInfo.CONSTANT_CLASS_INFO, "interface", -1);
+        }
+        offset += 2 * interfaces;
+
+        offset = checkMembers(offset, "field name", "field descriptor");
+        offset = checkMembers(offset, "method name", "method descriptor");
+        offset = checkAttributes(offset);
+        if (offset != limit) {
+            throw fail(ParseFailure.Kind.BAD_STRUCTURE, offset,
+                    (limit - offset) + " extra bytes after the class file");
+        }
+    }
+
+    /**
+     * Walk constant pool, record tags and offsets of the entries.
+     * @return offset of the first byte after the constant pool.
+     */
+    private int readConstants(int offset) {
+        tags[0] = 0;
+        for (int i = 1; i < count; i++) {
+            need(offset, 1);
+            byte tag = buffer.get(offset);
+            int length;
+            switch (tag) {
+                case ConstantPoolInfo.CONSTANT_UTF8:
+                    need(offset + 1, 2);
+                    length = 2 + u2(offset + 1);
+                    break;
+                case ConstantPoolInfo.CONSTANT_CLASS_INFO:
+                case ConstantPoolInfo.CONSTANT_STRING:
+                case ConstantPoolInfo.CONSTANT_METHOD_TYPE:
+                case ConstantPoolInfo.CONSTANT_MODULE:
+                case ConstantPoolInfo.CONSTANT_PACKAGE:
+                    length = 2;
+                    break;
+                case ConstantPoolInfo.CONSTANT_METHOD_HANDLE:
+                    length = 3;
+                    break;
+                case ConstantPoolInfo.CONSTANT_INT:
+                case ConstantPoolInfo.CONSTANT_FLOAT:
+                case ConstantPoolInfo.CONSTANT_NAME_AND_TYPE:
+                case ConstantPoolInfo.CONSTANT_FIELD_REF:
+                case ConstantPoolInfo.CONSTANT_METHOD_REF:
+                case ConstantPoolInfo.CONSTANT_INTERFACE_METHOD_REF:
+                case ConstantPoolInfo.CONSTANT_DYNAMIC:
+                case ConstantPoolInfo.CONSTANT_INVOKE_DYNAMIC:
+                    length = 4;
+                    break;
+                case ConstantPoolInfo.CONSTANT_LONG:
+                case ConstantPoolInfo.CONSTANT_DOUBLE:
+                    length = 8;
+                    break;
+                default:
+                    throw fail(ParseFailure.Kind.UNKNOWN_TAG, offset, "Unknown constant type tag: " + tag);
+            }
+            need(offset + 1, length);
+            if (tag == ConstantPoolInfo.CONSTANT_UTF8) {
+                checkUtf8(i, offset + 3, length - 2);
+            }
+            tags[i] = tag;
+            offsets[i] = offset;
+            if (tag == ConstantPoolInfo.CONSTANT_LONG || tag == ConstantPoolInfo.CONSTANT_DOUBLE) {
+                if (i + 1 >= count) {
+                    throw fail(ParseFailure.Kind.BAD_STRUCTURE, offset,
+                            "Constant #" + i + " takes two slots past the end of the constant pool");
+                }
+                tags[++i] = 0;
+            }
+            offset += 1 + length;
+        }
+        return offset;
+    }
+
+    /**
+     * Check modified UTF-8 encoding, with the same rules as {@link org.aalabs.sjcp.cp.ModifiedUtf8}.
+     */
+    private void checkUtf8(int index, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        // Fast path for plain ASCII, eight bytes at a time.
+        while (i + 8 <= end && (buffer.getLong(i) & 0x8080808080808080L) == 0) {
+            i += 8;
+        }
+        while (i < end) {
+            int c = buffer.get(i) & 0xFF;
+            if (c <= 0x7F) {
+                i++;
+                continue;
+            }
+            int size;
+            switch (c >> 4) {
+                case 12: case 13:
+                    size = 2;
+                    break;
+                case 14:
+                    size = 3;
+                    break;
+                default:
+                    throw fail(ParseFailure.Kind.MALFORMED_UTF8, i, "Malformed UTF8 constant #" + index);
+            }
+            if (i + size > end || (buffer.get(i + 1) & 0xC0) != 0x80
+                    || (size == 3 && (buffer.get(i + 2) & 0xC0) != 0x80)) {
+                throw fail(ParseFailure.Kind.MALFORMED_UTF8, i, "Malformed UTF8 constant #" + index);
+            }
+            i += size;
+        }
+    }
+
+    /**
+     * Check references between the constant pool entries.
+     */
+    private void checkConstants() {
+        for (int i = 1; i < count; i++) {
+            int offset = offsets[i];
+            switch (tags[i]) {
+                case ConstantPoolInfo.CONSTANT_CLASS_INFO:
+                case ConstantPoolInfo.CONSTANT_STRING:
+                case ConstantPoolInfo.CONSTANT_METHOD_TYPE:
+                case ConstantPoolInfo.CONSTANT_MODULE:
+                case ConstantPoolInfo.CONSTANT_PACKAGE:
+                    ref(offset + 1, ConstantPoolInfo.CONSTANT_UTF8, "constant", i);
+                    break;
+                case ConstantPoolInfo.CONSTANT_NAME_AND_TYPE:
+                    ref(offset + 1, ConstantPoolInfo.CONSTANT_UTF8, "constant", i);
+                    ref(offset + 3, ConstantPoolInfo.CONSTANT_UTF8, "constant", i);
+                    break;
+                case ConstantPoolInfo.CONSTANT_FIELD_REF:
+                case ConstantPoolInfo.CONSTANT_METHOD_REF:
+                case ConstantPoolInfo.CONSTANT_INTERFACE_METHOD_REF:
+                    ref(offset + 1, ConstantPoolInfo.CONSTANT_CLASS_INFO, "constant", i);
+                    ref(offset + 3, ConstantPoolInfo.CONSTANT_NAME_AND_TYPE, "constant", i);
+                    break;
+                case ConstantPoolInfo.CONSTANT_DYNAMIC:
+                case ConstantPoolInfo.CONSTANT_INVOKE_DYNAMIC:
+                    ref(offset + 3, ConstantPoolInfo.CONSTANT_NAME_AND_TYPE, "constant", i);
+                    break;
+                case ConstantPoolInfo.CONSTANT_METHOD_HANDLE:
+                    checkMethodHandle(i, offset);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void checkMethodHandle(int index, int offset) {
+        int kind = buffer.get(offset + 1);
+        int reference = u2(offset + 2);
+        byte tag = reference > 0 && reference < count ? tags[reference] : 0;
+        boolean valid;
+        switch (kind) {
+            case 1: case 2: case 3: case 4:
+                // getField, getStatic, putField, putStatic
+                valid = tag == ConstantPoolInfo.CONSTANT_FIELD_REF;
+                break;
+            case 5: case 8:
+                // invokeVirtual, newInvokeSpecial
+                valid = tag == ConstantPoolInfo.CONSTANT_METHOD_REF;
+                break;
+            case 6: case 7:
+                // invokeStatic, invokeSpecial
+                valid = tag == ConstantPoolInfo.CONSTANT_METHOD_REF
+                        || tag == ConstantPoolInfo.CONSTANT_INTERFACE_METHOD_REF;
+                break;
+            case 9:
+                // invokeInterface
+                valid = tag == ConstantPoolInfo.CONSTANT_INTERFACE_METHOD_REF;
+                break;
+            default:
+                throw fail(ParseFailure.Kind.BAD_STRUCTURE, offset + 1,
+                        "Constant #" + index + ": unknown method handle kind " + kind);
+        }
+        if (!valid) {
+            throw fail(ParseFailure.Kind.BAD_CONSTANT_REFERENCE, offset + 2,
+                    "Constant #" + index + ": method handle of kind " + kind + " references #" + reference);
+        }
+    }
+
+    private int checkMembers(int offset, String name, String descriptor) {
+        need(offset, 2);
+        int members = u2(offset);
+        offset += 2;
+        for (int i = 0; i < members; i++) {
+            need(offset, 8);
+            ref(offset + 2, ConstantPoolInfo.CONSTANT_UTF8, name, -1);
+            ref(offset + 4, ConstantPoolInfo.CONSTANT_UTF8, descriptor, -1);
+            offset = checkAttributes(offset + 6);
+        }
+        return offset;
+    }
+
+    private int checkAttributes(int offset) {
+        need(offset, 2);
+        int attributes = u2(offset);
+        offset += 2;
+        for (int i = 0; i < attributes; i++) {
+            need(offset, 6);
+            ref(offset, ConstantPoolInfo.CONSTANT_UTF8, "attribute name", -1);
+            int length = buffer.getInt(offset + 2);
+            if (length < 0) {
+                throw fail(ParseFailure.Kind.BAD_STRUCTURE, offset + 2,
+                        "Attribute is too long: " + (length & 0xFFFFFFFFL));
+            }
+            need(offset + 6, length);
+            offset += 6 + length;
+        }
+        return offset;
+    }
+
+    /**
+     * Check the constant pool index at the offset.
+     * @param what referencing structure, for the message.
+     * @param constant index of the referencing constant or <code>-1</code>.
+     */
+    private void ref(int offset, byte expectedTag, String what, int constant) {
+        int index = u2(offset);
+        if (index == 0 || index >= count || tags[index] != expectedTag) {
+            throw badReference(offset, index, expectedTag, what, constant);
+        }
+    }
+
+    private Invalid badReference(int offset, int index, byte expectedTag, String what, int constant) {
+        return fail(ParseFailure.Kind.BAD_CONSTANT_REFERENCE, offset, "Bad " + what
+                + (constant >= 0 ? " #" + constant : "") + " reference #" + index
+                + ", expected constant with tag " + expectedTag);
+    }
+
+    private void need(int offset, long length) {
+        if (offset + length > limit) {
+            throw fail(ParseFailure.Kind.TRUNCATED, offset, "Class file is truncated, "
+                    + length + " bytes expected, " + Math.max(0, limit - offset) + " available");
+        }
+    }
+
+    private int u2(int offset) {
+        return buffer.getShort(offset) & 0xFFFF;
+    }
+
+    private Invalid fail(ParseFailure.Kind kind, int offset, String message) {
+        return new Invalid(new ParseFailure(kind, offset - start, message, null));
+    }
+
+    /**
+     * Unwinds the validation, never leaves the validator.
+     */
+    private static final class Invalid extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final transient ParseFailure failure;
+
+        Invalid(ParseFailure failure) {
+            super(null, null, false, false);
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp;
+
+import org.aalabs.sjcp.cp.ConstantVisitor;
+import org.aalabs.sjcp.cp.PackedConstantPool;
+
+/**
+ * Push-style receiver of the class file structure, see {@link ClassParser#parse}.
+ * <p>
+ * Callbacks are made in the class file order. Every callback returning <code>boolean</code>
+ * may return <code>false</code> to stop parsing as soon as the visitor has what it needs; the
+ * rest of the class file is not read then. All callbacks continue by default. Indices are
+ * constant pool indices, offsets are absolute offsets in the parsed buffer.
+ * @author Andrew Porokhin
+ */
+public abstract class ClassFileVisitor extends ConstantVisitor {
+    /**
+     * Called after the magic number is checked.
+     * @param majorVersion major version.
+     * @param minorVersion minor version.
+     * @param constantPoolCount <code>constant_pool_count</code> value.
+     * @return <code>false</code> to stop parsing.
+     */
+    public boolean visitHeader(int majorVersion, int minorVersion, int constantPoolCount) {
+        return true;
+    }
+
+    /**
+     * Called after the constant pool is read.
+     * @param constantPool constant pool of the class, valid until the parser is used again.
+     * @param accessFlags class access flags.
+     * @param thisClassIndex index of this class info.
+     * @return <code>false</code> to stop parsing.
+     */
+    public boolean visitClass(PackedConstantPool constantPool, int accessFlags, int thisClassIndex) {
+        return true;
+    }
+
+    /**
+     * Called for the super class.
+     * @param superClassIndex index of the super class info, 0 if there is no super class.
+     * @return <code>false</code> to stop parsing.
+     */
+    public boolean visitSuperclass(int superClassIndex) {
+        return true;
+    }
+
+    public boolean visitInterface(int classIndex) {
+        return true;
+    }
+
+    /**
+     * Called for every field.
+     * @param accessFlags field access flags.
+     * @param nameIndex index of the name.
+     * @param descriptorIndex index of the descriptor.
+     * @param attributesOffset offset of the <code>attributes_count</code> item of the field.
+     * @return <code>false</code> to stop parsing.
+     */
+    public boolean visitField(int accessFlags, int nameIndex, int descriptorIndex, int attributesOffset) {
+        return true;
+    }
+
+    /**
+     * Called for every method.
+     * @param accessFlags method access flags.
+     * @param nameIndex index of the name.
+     * @param descriptorIndex index of the descriptor.
+     * @param attributesOffset offset of the <code>attributes_count</code> item of the method.
+     * @return <code>false</code> to stop parsing.
+     */
+    public boolean visitMethod(int accessFlags, int nameIndex, int descriptorIndex, int attributesOffset) {
+        return true;
+    }
+
+    /**
+     * Called for every class attribute.
+     * @param nameIndex index of the attribute name.
+     * @param offset offset of the attribute data.
+     * @param length length of the attribute data.
+     * @return <code>false</code> to stop parsing.
+     */
+    public boolean visitAttribute(int nameIndex, int offset, int length) {
+        return true;
+    }
+
+    /**
+     * Called when the whole class file is read.
+     */
+    public void visitEnd() {
+    }
+}
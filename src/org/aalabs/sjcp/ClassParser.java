@@ -0,0 +1,184 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp;
+
+import org.aalabs.sjcp.cp.PackedConstantPool;
+import org.aalabs.sjcp.cp.SymbolTable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reusable class file parser for batch processing.
+ * <p>
+ * Unlike {@link JavaClassReader} the parser creates no objects per class: the constant pool is
+ * loaded into the arrays of a {@link PackedConstantPool} owned by the parser, and the class
+ * structure is reported to a {@link ClassFileVisitor} as primitive values. The arrays grow to
+ * the size of the largest class and are reused, so in a steady state parsing produces no
+ * garbage besides what the visitor keeps.
+ * <p>
+ * Parser is not thread-safe; keep one instance per thread. The constant pool and the buffer
+ * are valid until the next {@link #parse(ByteBuffer, ClassFileVisitor)} or {@link #reset()}.
+ * @author Andrew Porokhin
+ */
+public class ClassParser {
+    private final PackedConstantPool constantPool = new PackedConstantPool();
+    private SymbolTable symbolTable;
+    private ByteBuffer buffer;
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /**
+     * Set table used to decode UTF8 constants.
+     * @param symbolTable table of shared UTF8 strings, may be <code>null</code>.
+     */
+    public void setSymbolTable(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    /**
+     * Parse class file. The class file starts at the current buffer position; all reads are
+     * absolute, so the position and limit of the buffer are not changed.
+     * @param classBuffer buffer with the class file.
+     * @param visitor receiver of the class structure.
+     * @return absolute offset of the first byte after the class file or <code>-1</code> if the
+     *         visitor stopped parsing.
+     * @throws IllegalArgumentException if the class file is malformed.
+     * @throws IndexOutOfBoundsException if the class file is truncated.
+     */
+    public int parse(ByteBuffer classBuffer, ClassFileVisitor visitor) {
+        ByteBuffer buffer = classBuffer;
+        if (buffer.order() != ByteOrder.BIG_ENDIAN) {
+            buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        }
+        this.buffer = buffer;
+
+        int offset = buffer.position();
+        if (buffer.getInt(offset) != 0xCAFEBABE) {
+            throw new IllegalArgumentException("Incorrect Java Class File, wrong signature");
+        }
+        int constantPoolCount = u2(offset + 8);
+        if (!visitor.visitHeader(u2(offset + 6), u2(offset + 4), constantPoolCount)) {
+            return -1;
+        }
+        offset = constantPool.load(buffer, offset + 10, constantPoolCount, symbolTable, visitor);
+        if (offset < 0
+                || !visitor.visitClass(constantPool, u2(offset), u2(offset + 2))
+                || !visitor.visitSuperclass(u2(offset + 4))) {
+            return -1;
+        }
+        offset += 6;
+
+        int count = u2(offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            if (!visitor.visitInterface(u2(offset))) {
+                return -1;
+            }
+            offset += 2;
+        }
+
+        count = u2(offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            if (!visitor.visitField(u2(offset), u2(offset + 2), u2(offset + 4), offset + 6)) {
+                return -1;
+            }
+            offset = skipAttributes(offset + 6);
+        }
+
+        count = u2(offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            if (!visitor.visitMethod(u2(offset), u2(offset + 2), u2(offset + 4), offset + 6)) {
+                return -1;
+            }
+            offset = skipAttributes(offset + 6);
+        }
+
+        count = u2(offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            int length = attributeLength(offset);
+            if (!visitor.visitAttribute(u2(offset), offset + 6, length)) {
+                return -1;
+            }
+            offset += 6 + length;
+        }
+
+        visitor.visitEnd();
+        return offset;
+    }
+
+    /**
+     * Get constant pool of the last parsed class.
+     * @return constant pool, reused by the next parse.
+     */
+    public PackedConstantPool getConstantPool() {
+        return constantPool;
+    }
+
+    /**
+     * Get big-endian buffer of the last parsed class.
+     * @return buffer or <code>null</code> after reset.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Release references to the last parsed class, e.g. to let a mapped file be unmapped.
+     * The arrays are kept for the next parse.
+     */
+    public void reset() {
+        buffer = null;
+        constantPool.clear();
+    }
+
+    private int skipAttributes(int offset) {
+        int count = u2(offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            offset += 6 + attributeLength(offset);
+        }
+        return offset;
+    }
+
+    private int attributeLength(int offset) {
+        int length = buffer.getInt(offset + 2);
+        if (length < 0) {
+            throw new IllegalArgumentException("Attribute is too long: " + (length & 0xFFFFFFFFL));
+        }
+        return length;
+    }
+
+    private int u2(int offset) {
+        return buffer.getShort(offset) & 0xFFFF;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp;
+
+import org.aalabs.sjcp.cp.ConstantPoolInfo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Diagnostic dump of the constant pools of the parsed classes, installed with
+ * {@link JavaClassReader#setDumpWriter(ConstantPoolDumpWriter)}.
+ * <p>
+ * Entries are decoded again from the class data and streamed to the output one line at a
+ * time, so nothing is collected in memory. Every class starts with a header line naming the
+ * class and its location when they are known, the dump of a malformed class ends with the
+ * entry the decoding failed on. In the failures-only mode successful classes cost nothing.
+ * <p>
+ * Output is flushed after every failed class and on close.
+ * @author Andrew Porokhin
+ */
+public class ConstantPoolDumpWriter implements Closeable {
+    private final Writer out;
+    private final boolean failuresOnly;
+    private long classCount;
+
+    /**
+     * Create dump writer.
+     * @param out output for the dump, closed with the writer.
+     * @param failuresOnly <code>true</code> to dump only the classes which can't be parsed.
+     */
+    public ConstantPoolDumpWriter(Writer out, boolean failuresOnly) {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, 8192);
+        this.failuresOnly = failuresOnly;
+    }
+
+    /**
+     * Create dump writer to the file.
+     * @param file dump file, replaced if exists.
+     * @param failuresOnly <code>true</code> to dump only the classes which can't be parsed.
+     * @return dump writer.
+     * @throws IOException if the file can't be created.
+     */
+    public static ConstantPoolDumpWriter open(Path file, boolean failuresOnly) throws IOException {
+        return new ConstantPoolDumpWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), failuresOnly);
+    }
+
+    public boolean isFailuresOnly() {
+        return failuresOnly;
+    }
+
+    /**
+     * Dump constant pool of the parsed class.
+     * @param location class file location, may be <code>null</code>.
+     * @param buffer buffer with the class file, starting at the buffer position.
+     */
+    void classParsed(String location, ByteBuffer buffer) {
+        if (!failuresOnly) {
+            dump(location, buffer, null);
+        }
+    }
+
+    /**
+     * Dump constant pool of the class which can't be parsed.
+     * @param location class file location, may be <code>null</code>.
+     * @param buffer buffer with the class file, starting at the buffer position.
+     * @param cause failure cause.
+     */
+    void classFailed(String location, ByteBuffer buffer, Throwable cause) {
+        dump(location, buffer, cause);
+    }
+
+    private synchronized void dump(String location, ByteBuffer buffer, Throwable cause) {
+        if (buffer.order() != ByteOrder.BIG_ENDIAN) {
+            buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        }
+        int start = buffer.position();
+        try {
+            classCount++;
+            StringBuilder header = new StringBuilder("# class ").append(classCount);
+            String name = getClassName(buffer);
+            if (name != null) {
+                header.append(' ').append(name);
+            }
+            if (location != null) {
+                header.append(" at ").append(location);
+            }
+            if (cause != null) {
+                header.append(" FAILED: ").append(cause);
+            }
+            out.write(header.append('\n').toString());
+            int offset = start;
+            int index = 0;
+            try {
+                int count = buffer.getShort(offset + 8) & 0xFFFF;
+                out.write("version " + (buffer.getShort(offset + 6) & 0xFFFF) + "."
+                        + (buffer.getShort(offset + 4) & 0xFFFF) + ", constants " + count + "\n");
+                offset += 10;
+                for (index = 1; index < count; index++) {
+                    byte tag = buffer.get(offset);
+                    ConstantPoolInfo cpi = ConstantPoolInfo.readConstantPoolInfo(tag, buffer, offset + 1);
+                    out.write("[" + index + "] @" + (offset - start) + " " + cpi + "\n");
+                    offset += 1 + ConstantPoolInfo.getConstantPoolInfoLength(tag, buffer, offset + 1);
+                    if (tag == ConstantPoolInfo.CONSTANT_DOUBLE || tag == ConstantPoolInfo.CONSTANT_LONG) {
+                        index++;
+                    }
+                }
+                out.write("end of constants @" + (offset - start) + "\n");
+            } catch (RuntimeException ex) {
+                out.write("[" + index + "] @" + (offset - start) + " can't be decoded: " + ex + "\n");
+            }
+            if (cause != null) {
+                out.flush();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Get name of the class from <code>this_class</code>.
+     * @return class name or <code>null</code> if it can't be resolved.
+     */
+    private static String getClassName(ByteBuffer buffer) {
+        try {
+            return JavaClassReader.parseHeader(buffer, null).getCanonicalName();
+        } catch (RuntimeException ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Attribute of the Java class, field or method.
+ * The attribute data is kept as a slice of the class file and is not decoded by the reader.
+ * @author Andrew Porokhin
+ */
+public class JavaAttributeInfo {
+    private final JavaClassFileImpl classFile;
+    private final int nameIndex;
+    private final int offset;
+    private final int length;
+
+    JavaAttributeInfo(JavaClassFileImpl classFile, int nameIndex, int offset, int length) {
+        this.classFile = classFile;
+        this.nameIndex = nameIndex;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Get name of the attribute, e.g. <code>Code</code> or <code>SourceFile</code>.
+     * @return attribute name.
+     */
+    public String getName() {
+        return classFile.getUtf8(nameIndex);
+    }
+
+    public int getNameIndex() {
+        return nameIndex;
+    }
+
+    /**
+     * Get length of the attribute data in bytes.
+     * @return data length.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Get attribute data. The buffer shares content with the class file, no bytes are copied.
+     * @return read-only big-endian buffer positioned at the first byte of the data.
+     */
+    public ByteBuffer getData() {
+        return classFile.slice(offset, length);
+    }
+
+    @Override
+    public String toString() {
+        return "Attribute " + getName() + " [" + length + " bytes]";
+    }
+}
@@ -27,32 +27,42 @@
  */
 package org.aalabs.sjcp;
 
+import org.aalabs.sjcp.cp.ConstantPool;
+
+import java.util.List;
+
 /**
  * Simple Java class file object.
  * @author Andrew Porokhin
  */
-public abstract class JavaClassFile {
+public abstract class JavaClassFile extends JavaClassHeader {
+    /**
+     * Get constant pool of the Java class.
+     * @return constant pool.
+     */
+    public abstract ConstantPool getConstantPool();
+
     /**
-     * Get major version of the Java class.
-     * @return major version number
+     * Get canonical names of the directly implemented interfaces.
+     * @return list of interface names.
      */
-    public abstract int getMajorVersion();
+    public abstract List<String> getInterfaceNames();
 
     /**
-     * Get minor version of the Java class.
-     * @return minor version number
+     * Get fields of the Java class.
+     * @return list of fields.
      */
-    public abstract int getMinorVersion();
+    public abstract List<JavaMemberInfo> getFields();
 
     /**
-     * Get canonical name of the Java class.
-     * @return String with canonical Java class name.
+     * Get methods of the Java class.
+     * @return list of methods.
      */
-    public abstract String getCanonicalName();
+    public abstract List<JavaMemberInfo> getMethods();
 
     /**
-     * Get super class canonical name of the Java class.
-     * @return String with canonical name of the super class.
+     * Get attributes of the Java class.
+     * @return list of attributes.
      */
-    public abstract String getSuperClassCanonicalName();
+    public abstract List<JavaAttributeInfo> getAttributes();
 }
@@ -27,9 +27,14 @@
 package org.aalabs.sjcp;
 
 import org.aalabs.sjcp.cp.ConstantClassInfo;
+import org.aalabs.sjcp.cp.ConstantPool;
 import org.aalabs.sjcp.cp.ConstantPoolInfo;
 import org.aalabs.sjcp.cp.ConstantPrimitive;
+import org.aalabs.sjcp.metrics.ParseMetrics;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -37,7 +42,7 @@ import java.util.List;
  * @author Andrew Porokhin
  */
 public class JavaClassFileImpl extends JavaClassFile {
-    private List<ConstantPoolInfo> constantPoolList = null;
+    private ConstantPool constantPool = null;
     private int majorVersion = -1;
     private int minorVersion = -1;
     private int thisClassIndex = -1;
@@ -45,15 +50,31 @@ public class JavaClassFileImpl extends JavaClassFile {
 
     private int accessFlags = -1;
 
-    void setConstantPoolList(List<ConstantPoolInfo> constantPoolList) {
-        this.constantPoolList = constantPoolList;
+    /** Class file data, members and attributes are read from it on demand. */
+    private ByteBuffer buffer = null;
+    /** Offset of the <code>interfaces_count</code> item. */
+    private int interfacesOffset = -1;
+    private int fieldsOffset = -1;
+    private int methodsOffset = -1;
+    private int attributesOffset = -1;
+    private List<JavaMemberInfo> fields = null;
+    private List<JavaMemberInfo> methods = null;
+
+    void setBuffer(ByteBuffer buffer, int interfacesOffset) {
+        this.buffer = buffer;
+        this.interfacesOffset = interfacesOffset;
+    }
+
+    void setConstantPool(ConstantPool constantPool) {
+        this.constantPool = constantPool;
     }
 
     void setThisClassIndex(int thisClassIndex) {
         this.thisClassIndex = thisClassIndex;
     }
 
-    int getThisClassIndex() {
+    @Override
+    public int getThisClassIndex() {
         return thisClassIndex;
     }
     
@@ -61,7 +82,8 @@ public class JavaClassFileImpl extends JavaClassFile {
         this.superClassIndex = superClassIndex;
     }
 
-    int getSuperClassIndex() {
+    @Override
+    public int getSuperClassIndex() {
         return superClassIndex;
     }
 
@@ -73,7 +95,8 @@ public class JavaClassFileImpl extends JavaClassFile {
         this.minorVersion = minorVersion;
     }
 
-    int getAccessFlags() {
+    @Override
+    public int getAccessFlags() {
         return accessFlags;
     }
 
@@ -81,19 +104,171 @@ public class JavaClassFileImpl extends JavaClassFile {
         this.accessFlags = accessFlags;
     }
 
+    @Override
+    public ConstantPool getConstantPool() {
+        return constantPool;
+    }
+
     ConstantPoolInfo getConstantPoolInfo(int index) {
-        return constantPoolList.get(index - 1);
+        return constantPool.getConstantPoolInfo(index);
     }
 
     String getClassName(int classPoolInfoIndex) {
-        ConstantPoolInfo cpi = getConstantPoolInfo(classPoolInfoIndex);
-        if (cpi instanceof ConstantClassInfo) {
-            int nameIndex = ((ConstantClassInfo) cpi).getNameIndex();
-            //noinspection unchecked
-            return ((ConstantPrimitive<String>) getConstantPoolInfo(nameIndex)).getValue();
+        if (classPoolInfoIndex == 0) {
+            // super_class of java/lang/Object and module-info
+            return null;
+        }
+        if (constantPool.getTag(checkIndex(classPoolInfoIndex)) != ConstantPoolInfo.CONSTANT_CLASS_INFO) {
+            return null;
+        }
+        int nameIndex = ((ConstantClassInfo) getConstantPoolInfo(classPoolInfoIndex)).getNameIndex();
+        String name = getUtf8(nameIndex);
+        if (name == null) {
+            throw new IllegalArgumentException("Class name #" + nameIndex + " is not a UTF8 constant");
+        }
+        return name;
+    }
+
+    String getUtf8(int utf8PoolInfoIndex) {
+        if (utf8PoolInfoIndex <= 0 || utf8PoolInfoIndex >= constantPool.getCount()
+                || constantPool.getTag(utf8PoolInfoIndex) != ConstantPoolInfo.CONSTANT_UTF8) {
+            return null;
+        }
+        return (String) ((ConstantPrimitive<?>) getConstantPoolInfo(utf8PoolInfoIndex)).getValue();
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= constantPool.getCount()) {
+            throw new IllegalArgumentException("Constant pool index out of range: #" + index
+                    + ", count: " + constantPool.getCount());
+        }
+        return index;
+    }
+
+    ByteBuffer slice(int offset, int length) {
+        ByteBuffer data = buffer.duplicate();
+        data.limit(offset + length);
+        data.position(offset);
+        return data.slice().asReadOnlyBuffer();
+    }
+
+    List<JavaAttributeInfo> readAttributes(int offset) {
+        int count = u2(offset);
+        offset += 2;
+        List<JavaAttributeInfo> attributes = new ArrayList<JavaAttributeInfo>(count);
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getInt(offset + 2);
+            if (length < 0) {
+                throw new IllegalArgumentException("Attribute is too long: " + (length & 0xFFFFFFFFL));
+            }
+            attributes.add(new JavaAttributeInfo(this, u2(offset), offset + 6, length));
+            offset += 6 + length;
+        }
+        return attributes;
+    }
+
+    /**
+     * Read members table.
+     * @param offset offset of the members count.
+     * @param members list for the read members, may be <code>null</code>.
+     * @return offset of the first byte after the table.
+     */
+    private int readMembers(int offset, List<JavaMemberInfo> members) {
+        int count = u2(offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            if (members != null) {
+                members.add(new JavaMemberInfo(this, u2(offset), u2(offset + 2), u2(offset + 4), offset + 6));
+            }
+            offset = skipAttributes(offset + 6);
+        }
+        return offset;
+    }
+
+    private int skipAttributes(int offset) {
+        int count = u2(offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            offset += 6 + buffer.getInt(offset + 2);
+        }
+        return offset;
+    }
+
+    private int getFieldsOffset() {
+        if (fieldsOffset < 0) {
+            fieldsOffset = interfacesOffset + 2 + 2 * u2(interfacesOffset);
+        }
+        return fieldsOffset;
+    }
+
+    private int getMethodsOffset() {
+        if (methodsOffset < 0) {
+            methodsOffset = readMembers(getFieldsOffset(), null);
         }
+        return methodsOffset;
+    }
+
+    private int getAttributesOffset() {
+        if (attributesOffset < 0) {
+            attributesOffset = readMembers(getMethodsOffset(), null);
+        }
+        return attributesOffset;
+    }
 
-        return null;
+    private int u2(int offset) {
+        return buffer.getShort(offset) & 0xFFFF;
+    }
+
+    @Override
+    public List<String> getInterfaceNames() {
+        int count = u2(interfacesOffset);
+        List<String> names = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(getClassName(u2(interfacesOffset + 2 + 2 * i)));
+        }
+        return names;
+    }
+
+    @Override
+    public List<JavaMemberInfo> getFields() {
+        if (fields == null) {
+            ParseMetrics parseMetrics = JavaClassReader.enabledMetrics();
+            long start = parseMetrics != null ? System.nanoTime() : 0;
+            List<JavaMemberInfo> list = new ArrayList<JavaMemberInfo>();
+            methodsOffset = readMembers(getFieldsOffset(), list);
+            fields = Collections.unmodifiableList(list);
+            if (parseMetrics != null) {
+                parseMetrics.phaseCompleted(ParseMetrics.Phase.MEMBERS, System.nanoTime() - start);
+            }
+        }
+        return fields;
+    }
+
+    @Override
+    public List<JavaMemberInfo> getMethods() {
+        if (methods == null) {
+            ParseMetrics parseMetrics = JavaClassReader.enabledMetrics();
+            long start = parseMetrics != null ? System.nanoTime() : 0;
+            List<JavaMemberInfo> list = new ArrayList<JavaMemberInfo>();
+            attributesOffset = readMembers(getMethodsOffset(), list);
+            methods = Collections.unmodifiableList(list);
+            if (parseMetrics != null) {
+                parseMetrics.phaseCompleted(ParseMetrics.Phase.MEMBERS, System.nanoTime() - start);
+            }
+        }
+        return methods;
+    }
+
+    @Override
+    public List<JavaAttributeInfo> getAttributes() {
+        ParseMetrics parseMetrics = JavaClassReader.enabledMetrics();
+        if (parseMetrics == null) {
+            return readAttributes(getAttributesOffset());
+        }
+        long start = System.nanoTime();
+        List<JavaAttributeInfo> attributes = readAttributes(getAttributesOffset());
+        parseMetrics.phaseCompleted(ParseMetrics.Phase.ATTRIBUTES, System.nanoTime() - start);
+        return attributes;
     }
 
     @Override
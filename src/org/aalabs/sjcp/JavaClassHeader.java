@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ *
+ */
+package org.aalabs.sjcp;
+
+/**
+ * Header of the Java class file: everything up to <code>super_class</code> except the
+ * constant pool. This is all the header-only reader produces, see
+ * {@link JavaClassReader#processHeader(java.nio.ByteBuffer)}; the fully parsed
+ * {@link JavaClassFile} is a header too.
+ * @author Andrew Porokhin
+ */
+public abstract class JavaClassHeader {
+    /**
+     * Get major version of the Java class.
+     * @return major version number
+     */
+    public abstract int getMajorVersion();
+
+    /**
+     * Get minor version of the Java class.
+     * @return minor version number
+     */
+    public abstract int getMinorVersion();
+
+    /**
+     * Get canonical name of the Java class.
+     * @return String with canonical Java class name.
+     */
+    public abstract String getCanonicalName();
+
+    /**
+     * Get super class canonical name of the Java class.
+     * @return String with canonical name of the super class.
+     */
+    public abstract String getSuperClassCanonicalName();
+
+    /**
+     * Get constant pool index of the class info of this class.
+     * @return <code>this_class</code> index.
+     */
+    public abstract int getThisClassIndex();
+
+    /**
+     * Get constant pool index of the class info of the super class.
+     * @return <code>super_class</code> index, 0 if there is no super class.
+     */
+    public abstract int getSuperClassIndex();
+
+    /**
+     * Get access flags of the Java class.
+     * @return access flags.
+     */
+    public abstract int getAccessFlags();
+}
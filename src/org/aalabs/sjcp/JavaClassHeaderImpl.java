@@ -0,0 +1,89 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp;
+
+/**
+ * Java class file header read by the header-only reader. Doesn't hold the constant pool.
+ * @author Andrew Porokhin
+ * @see JavaClassReader#processHeader(java.nio.ByteBuffer)
+ */
+class JavaClassHeaderImpl extends JavaClassHeader {
+    private final int majorVersion;
+    private final int minorVersion;
+    private final int accessFlags;
+    private final int thisClassIndex;
+    private final int superClassIndex;
+    private final String canonicalName;
+    private final String superClassCanonicalName;
+
+    JavaClassHeaderImpl(int majorVersion, int minorVersion, int accessFlags,
+                        int thisClassIndex, int superClassIndex,
+                        String canonicalName, String superClassCanonicalName) {
+        this.majorVersion = majorVersion;
+        this.minorVersion = minorVersion;
+        this.accessFlags = accessFlags;
+        this.thisClassIndex = thisClassIndex;
+        this.superClassIndex = superClassIndex;
+        this.canonicalName = canonicalName;
+        this.superClassCanonicalName = superClassCanonicalName;
+    }
+
+    @Override
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    @Override
+    public int getThisClassIndex() {
+        return thisClassIndex;
+    }
+
+    @Override
+    public int getSuperClassIndex() {
+        return superClassIndex;
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return majorVersion;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return minorVersion;
+    }
+
+    @Override
+    public String getCanonicalName() {
+        return canonicalName;
+    }
+
+    @Override
+    public String getSuperClassCanonicalName() {
+        return superClassCanonicalName;
+    }
+}
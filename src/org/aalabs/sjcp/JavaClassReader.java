@@ -27,9 +27,23 @@
 package org.aalabs.sjcp;
 
 import org.aalabs.sjcp.cp.ConstantPoolInfo;
+import org.aalabs.sjcp.cp.LazyConstantPool;
+import org.aalabs.sjcp.cp.PackedConstantPool;
+import org.aalabs.sjcp.cp.ModifiedUtf8;
+import org.aalabs.sjcp.cp.SymbolTable;
+import org.aalabs.sjcp.metrics.ParseMetrics;
 
 import java.io.*;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,59 +55,547 @@ import java.util.logging.Logger;
 public class JavaClassReader {
     private static final Logger logger = Logger.getLogger(JavaClassReader.class.getName());
 
+    /**
+     * Diagnostics switch, read once from the <code>org.aalabs.sjcp.diagnostics</code> system
+     * property. When it is off the JIT removes the diagnostic code from the parsing paths.
+     */
+    static final boolean DIAGNOSTICS = Boolean.getBoolean("org.aalabs.sjcp.diagnostics");
+
+    /** Parsers for {@link #processBuffer(ByteBuffer, ClassFileVisitor)}, empty while in use. */
+    private static final ThreadLocal<ClassParser> parsers = new ThreadLocal<ClassParser>();
+
+    private static volatile ParseMetrics metrics = ParseMetrics.NONE;
+    private static volatile ConstantPoolDumpWriter dumpWriter;
+
+    /**
+     * Install metrics receiver for all parsing methods.
+     * @param parseMetrics metrics receiver, <code>null</code> to stop collecting metrics.
+     */
+    public static void setMetrics(ParseMetrics parseMetrics) {
+        metrics = parseMetrics != null ? parseMetrics : ParseMetrics.NONE;
+    }
+
+    public static ParseMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Install constant pool dump writer for {@link #processBuffer(ByteBuffer, boolean, SymbolTable)}
+     * and the methods based on it. The dump is only written when the JVM is started with
+     * <code>-Dorg.aalabs.sjcp.diagnostics=true</code>.
+     * @param writer dump writer, <code>null</code> to stop dumping.
+     */
+    public static void setDumpWriter(ConstantPoolDumpWriter writer) {
+        if (writer != null && !DIAGNOSTICS) {
+            logger.log(Level.WARNING, "Constant pool dump is ignored, set -Dorg.aalabs.sjcp.diagnostics=true");
+        }
+        dumpWriter = writer;
+    }
+
+    /**
+     * Get metrics receiver if the metrics are collected.
+     * @return metrics receiver or <code>null</code>.
+     */
+    static ParseMetrics enabledMetrics() {
+        ParseMetrics current = metrics;
+        return current.isEnabled() ? current : null;
+    }
+
+    /**
+     * Read Java class from the stream. The stream is read to the end and the class file is
+     * parsed with {@link #processBuffer(ByteBuffer)}.
+     * <p>
+     * The whole stream is buffered in memory, even if only the header of the returned class is
+     * used later. Earlier versions stopped reading at <code>super_class</code>; use
+     * {@link #processHeader(InputStream)} to read only the header from the stream.
+     * @param inputStream stream with the class file.
+     * @return Java class file.
+     * @throws IOException if the stream can't be read or the class file is truncated.
+     */
     public static JavaClassFile processStream(InputStream inputStream) throws IOException {
-        DataInputStream di = new DataInputStream(inputStream);
-        int javaMagic = di.readInt();
+        ByteBuffer buffer = readFully(inputStream);
+        try {
+            return processBuffer(buffer);
+        } catch (IndexOutOfBoundsException ex) {
+            throw truncated(null, ex);
+        }
+    }
+
+    /**
+     * Convert failure of reading past the end of the buffer to the truncated file failure.
+     * @param location class file location, may be <code>null</code>.
+     */
+    private static EOFException truncated(Object location, IndexOutOfBoundsException cause) {
+        EOFException eof = new EOFException("Unexpected end of the class file"
+                + (location != null ? ": " + location : ""));
+        eof.initCause(cause);
+        return eof;
+    }
+
+    /**
+     * Read Java class from the buffer. The class file starts at the current buffer
+     * position; all reads are absolute, so the position and limit of the buffer are not changed.
+     * <p>
+     * Fields, methods and attributes are read from the buffer on demand, so the returned class
+     * keeps a reference to the buffer and the buffer content must stay unchanged while the
+     * class is in use.
+     * @param buffer buffer with the class file.
+     * @return Java class file.
+     */
+    public static JavaClassFile processBuffer(ByteBuffer buffer) {
+        return processBuffer(buffer, false);
+    }
+
+    /**
+     * Read Java class from the buffer.
+     * <p>
+     * In the lazy mode the constant pool is only indexed and its entries are decoded on
+     * demand (see {@link LazyConstantPool}). Otherwise the values of all entries are read into
+     * primitive arrays (see {@link PackedConstantPool}).
+     * @param buffer buffer with the class file.
+     * @param lazyConstantPool <code>true</code> to decode constant pool entries on demand.
+     * @return Java class file.
+     * @see #processBuffer(ByteBuffer)
+     */
+    public static JavaClassFile processBuffer(ByteBuffer buffer, boolean lazyConstantPool) {
+        return processBuffer(buffer, lazyConstantPool, null);
+    }
+
+    /**
+     * Read Java class from the buffer, decoding UTF8 constants through the shared symbol table.
+     * @param buffer buffer with the class file.
+     * @param lazyConstantPool <code>true</code> to decode constant pool entries on demand.
+     * @param symbolTable table of shared UTF8 strings, may be <code>null</code>.
+     * @return Java class file.
+     * @see #processBuffer(ByteBuffer, boolean)
+     */
+    public static JavaClassFile processBuffer(ByteBuffer buffer, boolean lazyConstantPool,
+                                              SymbolTable symbolTable) {
+        return processBuffer(buffer, lazyConstantPool, symbolTable, null);
+    }
+
+    /**
+     * Read Java class from the buffer, naming its location in the diagnostic output.
+     * @param buffer buffer with the class file.
+     * @param lazyConstantPool <code>true</code> to decode constant pool entries on demand.
+     * @param symbolTable table of shared UTF8 strings, may be <code>null</code>.
+     * @param location class file location written to the constant pool dump, may be <code>null</code>.
+     * @return Java class file.
+     * @see #setDumpWriter(ConstantPoolDumpWriter)
+     */
+    public static JavaClassFile processBuffer(ByteBuffer buffer, boolean lazyConstantPool,
+                                              SymbolTable symbolTable, String location) {
+        if (DIAGNOSTICS) {
+            ConstantPoolDumpWriter writer = dumpWriter;
+            if (writer != null) {
+                JavaClassFile javaClassFile;
+                try {
+                    javaClassFile = measureBuffer(buffer, lazyConstantPool, symbolTable);
+                } catch (RuntimeException ex) {
+                    writer.classFailed(location, buffer, ex);
+                    throw ex;
+                }
+                writer.classParsed(location, buffer);
+                return javaClassFile;
+            }
+        }
+        return measureBuffer(buffer, lazyConstantPool, symbolTable);
+    }
+
+    private static JavaClassFile measureBuffer(ByteBuffer buffer, boolean lazyConstantPool,
+                                               SymbolTable symbolTable) {
+        ParseMetrics parseMetrics = enabledMetrics();
+        if (parseMetrics == null) {
+            return parseBuffer(buffer, lazyConstantPool, symbolTable, null);
+        }
+
+        long start = System.nanoTime();
+        try {
+            JavaClassFile javaClassFile = parseBuffer(buffer, lazyConstantPool, symbolTable, parseMetrics);
+            parseMetrics.classParsed(buffer.remaining(), System.nanoTime() - start);
+            return javaClassFile;
+        } catch (RuntimeException ex) {
+            parseMetrics.classFailed(ex);
+            throw ex;
+        }
+    }
+
+    private static JavaClassFile parseBuffer(ByteBuffer buffer, boolean lazyConstantPool,
+                                             SymbolTable symbolTable, ParseMetrics parseMetrics) {
+        long start = parseMetrics != null ? System.nanoTime() : 0;
+        if (buffer.order() != ByteOrder.BIG_ENDIAN) {
+            buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        }
+
+        int offset = buffer.position();
+        int javaMagic = buffer.getInt(offset);
         if (javaMagic != 0xCAFEBABE) {
             throw new IllegalArgumentException("Incorrect Java Class File, wrong signature");
         }
 
         JavaClassFileImpl javaClassFile = new JavaClassFileImpl();
-        javaClassFile.setMinorVersion(di.readUnsignedShort());
-        javaClassFile.setMajorVersion(di.readUnsignedShort());
+        javaClassFile.setMinorVersion(buffer.getShort(offset + 4) & 0xFFFF);
+        javaClassFile.setMajorVersion(buffer.getShort(offset + 6) & 0xFFFF);
+
+        int constantPoolSize = buffer.getShort(offset + 8) & 0xFFFF;
+        offset += 10;
+        int[] countsByTag = null;
+        if (parseMetrics != null) {
+            long now = System.nanoTime();
+            parseMetrics.phaseCompleted(ParseMetrics.Phase.HEADER, now - start);
+            start = now;
+            countsByTag = new int[ParseMetrics.TAG_COUNT];
+        }
 
-        int constantPoolSize = di.readUnsignedShort();
-        ArrayList<ConstantPoolInfo> cpiList = new ArrayList<ConstantPoolInfo>(constantPoolSize);
+        if (lazyConstantPool) {
+            LazyConstantPool pool = LazyConstantPool.index(buffer, offset, constantPoolSize, symbolTable);
+            offset = pool.getEndOffset();
+            javaClassFile.setConstantPool(pool);
+
+            if (countsByTag != null) {
+                for (int i = 1; i < constantPoolSize; i++) {
+                    byte tag = pool.getTag(i);
+                    if (tag > 0 && tag < ParseMetrics.TAG_COUNT) {
+                        countsByTag[tag]++;
+                    }
+                }
+            }
+        } else {
+            PackedConstantPool pool = PackedConstantPool.read(buffer, offset, constantPoolSize, symbolTable);
+            offset = pool.getEndOffset();
+            javaClassFile.setConstantPool(pool);
 
-        final boolean isDebugLevel = logger.isLoggable(Level.FINEST);
-        logger.log(Level.FINEST, "Reading {0} constants...", constantPoolSize);
-        logger.log(Level.FINEST, "Dump of the CONSTANT POOL:");
+            if (countsByTag != null) {
+                for (int i = 1; i < constantPoolSize; i++) {
+                    countsByTag[pool.getTag(i)]++;
+                }
+                countsByTag[0] = 0;
+            }
+        }
+
+        if (parseMetrics != null) {
+            parseMetrics.phaseCompleted(ParseMetrics.Phase.CONSTANT_POOL, System.nanoTime() - start);
+            parseMetrics.constantsRead(countsByTag);
+        }
+
+        javaClassFile.setAccessFlags(buffer.getShort(offset) & 0xFFFF);
+        javaClassFile.setThisClassIndex(buffer.getShort(offset + 2) & 0xFFFF);
+        javaClassFile.setSuperClassIndex(buffer.getShort(offset + 4) & 0xFFFF);
+        javaClassFile.setBuffer(buffer, offset + 6);
+
+        return javaClassFile;
+    }
 
-        StringBuffer sb = null;
-        if (isDebugLevel) {
-            sb = new StringBuffer(2048);
+    /**
+     * Push the structure of the Java class to the visitor without building the object model.
+     * Uses a {@link ClassParser} kept per thread, so no objects are created per class.
+     * @param buffer buffer with the class file, starting at the buffer position.
+     * @param visitor receiver of the class structure.
+     * @return <code>true</code> if the whole class was read, <code>false</code> if the visitor
+     *         stopped parsing.
+     * @see ClassParser#parse(ByteBuffer, ClassFileVisitor)
+     */
+    public static boolean processBuffer(ByteBuffer buffer, ClassFileVisitor visitor) {
+        ClassParser parser = parsers.get();
+        if (parser == null) {
+            // First use on the thread or a nested call from a visitor.
+            parser = new ClassParser();
+        } else {
+            parsers.set(null);
+        }
+        try {
+            return parser.parse(buffer, visitor) >= 0;
+        } finally {
+            parser.reset();
+            parsers.set(parser);
         }
+    }
 
-        while (cpiList.size() < constantPoolSize - 1) {
-            byte tag = di.readByte();
-            ConstantPoolInfo cpi = ConstantPoolInfo.readConstantPoolInfo(tag, di);
-            cpiList.add(cpi);
+    /**
+     * Read Java class from the file. The file is memory-mapped and parsed with
+     * {@link #processBuffer(ByteBuffer)}.
+     * @param path path to the class file.
+     * @return Java class file or <code>null</code> if the file can't be read or is truncated.
+     */
+    public static JavaClassFile processFile(Path path) {
+        return processFile(path, false);
+    }
 
-            if (isDebugLevel) {
-                sb.append("[").append(cpiList.size()).append("]");
-                sb.append(cpi != null ? cpi.toString() : "null").append("\n");
+    /**
+     * Read Java class from the memory-mapped file.
+     * The returned class keeps the file mapping alive while it is reachable.
+     * @param path path to the class file.
+     * @param lazyConstantPool <code>true</code> to decode constant pool entries on demand.
+     * @return Java class file or <code>null</code> if the file can't be read or is truncated.
+     * @see #processBuffer(ByteBuffer, boolean)
+     */
+    public static JavaClassFile processFile(Path path, boolean lazyConstantPool) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return processBuffer(buffer, lazyConstantPool, null, path.toString());
+        } catch (IOException ex) {
+            metrics.classFailed(ex);
+            logger.log(Level.SEVERE, null, ex);
+        } catch (IndexOutOfBoundsException ex) {
+            // The parser has already reported the failure to the metrics.
+            logger.log(Level.SEVERE, null, truncated(path, ex));
+        } finally {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, null, ex);
             }
+        }
+        return null;
+    }
+
+    /**
+     * Read Java class from the file without blocking the calling thread.
+     * Uses a shared {@link AsyncClassReader} with the default concurrency limit.
+     * @param path path to the class file.
+     * @return future of the parsed class, completes exceptionally if the file can't be read
+     *         or parsed.
+     */
+    public static CompletableFuture<JavaClassFile> processFileAsync(Path path) {
+        return SharedAsyncReader.INSTANCE.read(path);
+    }
+
+    /**
+     * Read Java classes from the files without blocking the calling thread.
+     * Uses a shared {@link AsyncClassReader} with the default concurrency limit.
+     * @param paths paths to the class files.
+     * @return future of the parsed classes in the order of the paths.
+     * @see AsyncClassReader#readAll(Collection)
+     */
+    public static CompletableFuture<List<JavaClassFile>> processAllAsync(Collection<Path> paths) {
+        return SharedAsyncReader.INSTANCE.readAll(paths);
+    }
+
+    /**
+     * Read Java classes from the files without blocking the calling thread.
+     * @param paths paths to the class files.
+     * @param maxConcurrency maximum number of files read at the same time.
+     * @return future of the parsed classes in the order of the paths.
+     * @see AsyncClassReader#readAll(Collection)
+     */
+    public static CompletableFuture<List<JavaClassFile>> processAllAsync(Collection<Path> paths,
+                                                                        int maxConcurrency) {
+        return new AsyncClassReader(maxConcurrency).readAll(paths);
+    }
+
+    /** Created on the first asynchronous read. */
+    private static final class SharedAsyncReader {
+        static final AsyncClassReader INSTANCE = new AsyncClassReader();
+    }
+
+    /**
+     * Read only the header of the Java class: versions, access flags, class and super
+     * class names.
+     * <p>
+     * The constant pool is walked once by tag and length, recording only the offsets of the
+     * class info and UTF8 entries, then only the two class info entries and their UTF8 names
+     * are decoded. The returned header doesn't keep a reference to the buffer.
+     * @param buffer buffer with the class file, starting at the buffer position.
+     * @return Java class file header.
+     */
+    public static JavaClassHeader processHeader(ByteBuffer buffer) {
+        return processHeader(buffer, null);
+    }
+
+    /**
+     * Read only the header of the Java class, decoding names through the shared symbol table.
+     * @param buffer buffer with the class file, starting at the buffer position.
+     * @param symbolTable table of shared UTF8 strings, may be <code>null</code>.
+     * @return Java class file header.
+     * @see #processHeader(ByteBuffer)
+     */
+    public static JavaClassHeader processHeader(ByteBuffer buffer, SymbolTable symbolTable) {
+        ParseMetrics parseMetrics = enabledMetrics();
+        if (parseMetrics == null) {
+            return parseHeader(buffer, symbolTable);
+        }
+
+        long start = System.nanoTime();
+        try {
+            JavaClassHeader header = parseHeader(buffer, symbolTable);
+            long nanos = System.nanoTime() - start;
+            parseMetrics.phaseCompleted(ParseMetrics.Phase.HEADER, nanos);
+            parseMetrics.classParsed(buffer.remaining(), nanos);
+            return header;
+        } catch (RuntimeException ex) {
+            parseMetrics.classFailed(ex);
+            throw ex;
+        }
+    }
 
-            // According to VM Spec (nightmare... -_-):
-            // All 8-byte constants take up two entries in the constant_pool
-            // table of the class file. If a CONSTANT_Long_info or
-            // CONSTANT_Double_info structure is the item in the constant_pool
-            // table at index n, then the next usable item in the pool is
-            // located at index n+2. The constant_pool  index n+1 must be
-            // valid but is considered unusable.
+    static JavaClassHeader parseHeader(ByteBuffer buffer, SymbolTable symbolTable) {
+        if (buffer.order() != ByteOrder.BIG_ENDIAN) {
+            buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        }
+
+        int offset = buffer.position();
+        int javaMagic = buffer.getInt(offset);
+        if (javaMagic != 0xCAFEBABE) {
+            throw new IllegalArgumentException("Incorrect Java Class File, wrong signature");
+        }
+
+        int minorVersion = buffer.getShort(offset + 4) & 0xFFFF;
+        int majorVersion = buffer.getShort(offset + 6) & 0xFFFF;
+        int constantPoolSize = buffer.getShort(offset + 8) & 0xFFFF;
+        int constantPoolOffset = offset + 10;
+
+        // Offsets of the class info and UTF8 entries, recorded in the single walk of the pool.
+        int[] entryOffsets = new int[constantPoolSize];
+        offset = constantPoolOffset;
+        for (int index = 1; index < constantPoolSize; index++) {
+            byte tag = buffer.get(offset);
+            if (tag == ConstantPoolInfo.CONSTANT_CLASS_INFO || tag == ConstantPoolInfo.CONSTANT_UTF8) {
+                entryOffsets[index] = offset;
+            }
+            offset += 1 + ConstantPoolInfo.getConstantPoolInfoLength(tag, buffer, offset + 1);
             if (tag == ConstantPoolInfo.CONSTANT_DOUBLE || tag == ConstantPoolInfo.CONSTANT_LONG) {
-                cpiList.add(null);
+                index++;
             }
         }
-        javaClassFile.setConstantPoolList(cpiList);
 
-        logger.log(Level.FINEST, "{0}", sb);
+        int accessFlags = buffer.getShort(offset) & 0xFFFF;
+        int thisClassIndex = buffer.getShort(offset + 2) & 0xFFFF;
+        int superClassIndex = buffer.getShort(offset + 4) & 0xFFFF;
 
-        javaClassFile.setAccessFlags(di.readUnsignedShort());
-        javaClassFile.setThisClassIndex(di.readUnsignedShort());
-        javaClassFile.setSuperClassIndex(di.readUnsignedShort());
+        // class info -> name index -> UTF8
+        int thisNameIndex = readClassNameIndex(buffer, entryOffset(entryOffsets, thisClassIndex));
+        int superNameIndex = readClassNameIndex(buffer, entryOffset(entryOffsets, superClassIndex));
 
-        return javaClassFile;
+        return new JavaClassHeaderImpl(majorVersion, minorVersion, accessFlags, thisClassIndex, superClassIndex,
+                readUtf8(buffer, entryOffset(entryOffsets, thisNameIndex), symbolTable),
+                readUtf8(buffer, entryOffset(entryOffsets, superNameIndex), symbolTable));
+    }
+
+    /**
+     * Read only the header of the Java class from the stream. The stream is read up to
+     * <code>super_class</code> and not further: constant pool entries are copied by tag and
+     * length, the rest of the class file is never read.
+     * @param inputStream stream with the class file.
+     * @return Java class file header.
+     * @throws IOException if the stream can't be read or the header is truncated.
+     * @see #processHeader(ByteBuffer)
+     */
+    public static JavaClassHeader processHeader(InputStream inputStream) throws IOException {
+        return processHeader(inputStream, null);
+    }
+
+    /**
+     * Read only the header of the Java class from the stream, decoding names through the shared
+     * symbol table.
+     * @param inputStream stream with the class file.
+     * @param symbolTable table of shared UTF8 strings, may be <code>null</code>.
+     * @return Java class file header.
+     * @throws IOException if the stream can't be read or the header is truncated.
+     * @see #processHeader(InputStream)
+     */
+    public static JavaClassHeader processHeader(InputStream inputStream, SymbolTable symbolTable)
+            throws IOException {
+        byte[] bytes = new byte[1024];
+        readBytes(inputStream, bytes, 0, 10);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt(0) != 0xCAFEBABE) {
+            throw new IllegalArgumentException("Incorrect Java Class File, wrong signature");
+        }
+
+        int constantPoolSize = buffer.getShort(8) & 0xFFFF;
+        int count = 10;
+        for (int index = 1; index < constantPoolSize; index++) {
+            // Every entry has at least a tag and two bytes, enough to know its length.
+            if (count + 3 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                buffer = ByteBuffer.wrap(bytes);
+            }
+            readBytes(inputStream, bytes, count, 3);
+            byte tag = bytes[count];
+            int length = ConstantPoolInfo.getConstantPoolInfoLength(tag, buffer, count + 1);
+            if (count + 1 + length + 6 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, count + 1 + length + 6));
+                buffer = ByteBuffer.wrap(bytes);
+            }
+            readBytes(inputStream, bytes, count + 3, length - 2);
+            count += 1 + length;
+            if (tag == ConstantPoolInfo.CONSTANT_DOUBLE || tag == ConstantPoolInfo.CONSTANT_LONG) {
+                index++;
+            }
+        }
+        // access_flags, this_class, super_class
+        readBytes(inputStream, bytes, count, 6);
+        return processHeader(ByteBuffer.wrap(bytes, 0, count + 6), symbolTable);
+    }
+
+    private static void readBytes(InputStream inputStream, byte[] bytes, int offset, int length)
+            throws IOException {
+        while (length > 0) {
+            int read = inputStream.read(bytes, offset, length);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of the class file");
+            }
+            offset += read;
+            length -= read;
+        }
+    }
+
+    /**
+     * Read only the header of the Java class from the memory-mapped file.
+     * @param path path to the class file.
+     * @return Java class file header or <code>null</code> if the file can't be read or is truncated.
+     * @see #processHeader(ByteBuffer)
+     */
+    public static JavaClassHeader processHeader(Path path) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return processHeader(buffer);
+        } catch (IOException ex) {
+            metrics.classFailed(ex);
+            logger.log(Level.SEVERE, null, ex);
+        } catch (IndexOutOfBoundsException ex) {
+            // The parser has already reported the failure to the metrics.
+            logger.log(Level.SEVERE, null, truncated(path, ex));
+        } finally {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException ex) {
+                logger.log(Level.SEVERE, null, ex);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return tag offset of the recorded entry, 0 if the index is out of range or not recorded.
+     */
+    private static int entryOffset(int[] entryOffsets, int index) {
+        return index > 0 && index < entryOffsets.length ? entryOffsets[index] : 0;
+    }
+
+    private static int readClassNameIndex(ByteBuffer buffer, int offset) {
+        if (offset == 0 || buffer.get(offset) != ConstantPoolInfo.CONSTANT_CLASS_INFO) {
+            return 0;
+        }
+        return buffer.getShort(offset + 1) & 0xFFFF;
+    }
+
+    private static String readUtf8(ByteBuffer buffer, int offset, SymbolTable symbolTable) {
+        if (offset == 0 || buffer.get(offset) != ConstantPoolInfo.CONSTANT_UTF8) {
+            return null;
+        }
+        int length = buffer.getShort(offset + 1) & 0xFFFF;
+        return symbolTable != null
+                ? symbolTable.intern(buffer, offset + 3, length)
+                : ModifiedUtf8.decode(buffer, offset + 3, length);
     }
 
     public static JavaClassFile processFile(File f) {
@@ -117,9 +619,22 @@ public class JavaClassReader {
         return null;
     }
 
+    private static ByteBuffer readFully(InputStream inputStream) throws IOException {
+        byte[] bytes = new byte[4096];
+        int count = 0;
+        int read;
+        while ((read = inputStream.read(bytes, count, bytes.length - count)) >= 0) {
+            count += read;
+            if (count == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+        }
+        return ByteBuffer.wrap(bytes, 0, count);
+    }
+
     public static void main(String[] args) {
         if (args.length > 0) {
-            JavaClassFile f = JavaClassReader.processFile(new File(args[0]));
+            JavaClassHeader f = JavaClassReader.processHeader(new File(args[0]).toPath());
             logger.log(Level.INFO, "Class: {0} super type of {1}",
                     new Object[] { f.getCanonicalName(), f.getSuperClassCanonicalName() });
             logger.log(Level.INFO, "..Version: {0}.{1}", new Object[]{f.getMajorVersion(), f.getMinorVersion()});
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp;
+
+import java.util.List;
+
+/**
+ * Field or method of the Java class.
+ * @author Andrew Porokhin
+ */
+public class JavaMemberInfo {
+    private final JavaClassFileImpl classFile;
+    private final int accessFlags;
+    private final int nameIndex;
+    private final int descriptorIndex;
+    /** Offset of the <code>attributes_count</code> item. */
+    private final int attributesOffset;
+
+    JavaMemberInfo(JavaClassFileImpl classFile, int accessFlags, int nameIndex, int descriptorIndex,
+                   int attributesOffset) {
+        this.classFile = classFile;
+        this.accessFlags = accessFlags;
+        this.nameIndex = nameIndex;
+        this.descriptorIndex = descriptorIndex;
+        this.attributesOffset = attributesOffset;
+    }
+
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    /**
+     * Get name of the member.
+     * @return member name.
+     */
+    public String getName() {
+        return classFile.getUtf8(nameIndex);
+    }
+
+    /**
+     * Get descriptor of the member, e.g. <code>(Ljava/lang/String;)V</code>.
+     * @return member descriptor.
+     */
+    public String getDescriptor() {
+        return classFile.getUtf8(descriptorIndex);
+    }
+
+    public int getNameIndex() {
+        return nameIndex;
+    }
+
+    public int getDescriptorIndex() {
+        return descriptorIndex;
+    }
+
+    /**
+     * Get attributes of the member. Attributes are read from the class file on every call.
+     * @return list of attributes.
+     */
+    public List<JavaAttributeInfo> getAttributes() {
+        return classFile.readAttributes(attributesOffset);
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " " + getDescriptor();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp;
+
+/**
+ * Structured description of a class file that can't be read or parsed.
+ * @author Andrew Porokhin
+ * @see ClassFileValidator
+ */
+public final class ParseFailure {
+    /**
+     * Failure kind.
+     */
+    public enum Kind {
+        /** Data doesn't start with <code>0xCAFEBABE</code>. */
+        BAD_MAGIC,
+        /** Structure goes past the end of the data. */
+        TRUNCATED,
+        /** Constant pool entry with unknown tag. */
+        UNKNOWN_TAG,
+        /** UTF8 constant is not valid modified UTF-8. */
+        MALFORMED_UTF8,
+        /** Constant pool index is out of range or points to the entry of a wrong type. */
+        BAD_CONSTANT_REFERENCE,
+        /** Inconsistent structure: bad lengths or extra bytes after the class file. */
+        BAD_STRUCTURE,
+        /** Class file can't be read. */
+        READ_ERROR,
+        /** Class file passed the validation but the parser failed. */
+        PARSE_ERROR
+    }
+
+    private final Kind kind;
+    private final int offset;
+    private final String message;
+    private final Throwable cause;
+
+    ParseFailure(Kind kind, int offset, String message, Throwable cause) {
+        this.kind = kind;
+        this.offset = offset;
+        this.message = message;
+        this.cause = cause;
+    }
+
+    /**
+     * Create failure for the exception thrown while reading or parsing the class.
+     * @param kind failure kind.
+     * @param cause exception.
+     * @return failure.
+     */
+    public static ParseFailure of(Kind kind, Throwable cause) {
+        return new ParseFailure(kind, -1, String.valueOf(cause), cause);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return offset of the bad structure from the start of the class file or <code>-1</code>
+     *         if it is unknown.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return exception that caused the failure or <code>null</code> for validation failures.
+     */
+    public Throwable getCause() {
+        return cause;
+    }
+
+    /**
+     * Convert to the exception the parser would throw.
+     * @return exception.
+     */
+    public Exception toException() {
+        if (cause instanceof Exception) {
+            return (Exception) cause;
+        }
+        return new IllegalArgumentException(toString(), cause);
+    }
+
+    @Override
+    public String toString() {
+        return offset >= 0 ? kind + " at " + offset + ": " + message : kind + ": " + message;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.analysis;
+
+import org.aalabs.sjcp.index.NameTable;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Method-level call graph built by the {@link CallGraphBuilder}.
+ * <p>
+ * Every method signature has an int id; callees and callers of a method are sorted runs of ids
+ * in two arrays (compressed sparse rows in both directions), so the graph costs two ints per
+ * edge, one in each direction, plus a row start per method and the signatures. The builder
+ * hands the arrays over and never touches them again, so queries need no locking.
+ * @author Andrew Porokhin
+ */
+public class CallGraph {
+    private final NameTable methods;
+    private final boolean[] declared;
+    private final int[] calleeStart;
+    private final int[] callees;
+    private final int[] callerStart;
+    private final int[] callers;
+
+    CallGraph(NameTable methods, boolean[] declared, int[] calleeStart, int[] callees,
+              int[] callerStart, int[] callers) {
+        this.methods = methods;
+        this.declared = declared;
+        this.calleeStart = calleeStart;
+        this.callees = callees;
+        this.callerStart = callerStart;
+        this.callers = callers;
+    }
+
+    /**
+     * Get method signature in the form used by the graph.
+     * @param owner internal name of the class, e.g. <code>java/util/List</code>.
+     * @param name method name.
+     * @param descriptor method descriptor.
+     * @return signature, e.g. <code>java/util/List.add(Ljava/lang/Object;)Z</code>.
+     */
+    public static String signature(String owner, String name, String descriptor) {
+        return owner + '.' + name + descriptor;
+    }
+
+    /**
+     * Get number of the methods, including the methods which are only called.
+     * @return number of the methods.
+     */
+    public int getMethodCount() {
+        return methods.size();
+    }
+
+    public int getEdgeCount() {
+        return callees.length;
+    }
+
+    /**
+     * Get id of the method.
+     * @param signature method signature, see {@link #signature(String, String, String)}.
+     * @return id of the method or <code>-1</code> if the method is unknown.
+     */
+    public int getId(String signature) {
+        return methods.get(signature);
+    }
+
+    public String getSignature(int id) {
+        return methods.getName(id);
+    }
+
+    /**
+     * Check if the method is declared in a scanned class or is only called by the scanned code.
+     * @param id id of the method.
+     * @return <code>true</code> if the method is declared in a scanned class.
+     */
+    public boolean isDeclared(int id) {
+        return declared[id];
+    }
+
+    /**
+     * Get methods invoked by the method.
+     * @param id id of the method.
+     * @return sorted ids of the callees.
+     */
+    public int[] getCallees(int id) {
+        return Arrays.copyOfRange(callees, calleeStart[id], calleeStart[id + 1]);
+    }
+
+    /**
+     * Get methods that invoke the method.
+     * @param id id of the method.
+     * @return sorted ids of the callers.
+     */
+    public int[] getCallers(int id) {
+        return Arrays.copyOfRange(callers, callerStart[id], callerStart[id + 1]);
+    }
+
+    /**
+     * Get methods invoked by the method.
+     * @param signature method signature.
+     * @return signatures of the callees, empty if the method is unknown.
+     */
+    public List<String> calleesOf(String signature) {
+        return row(signature, calleeStart, callees);
+    }
+
+    /**
+     * Get methods that invoke the method. The callers only include invocations of exactly this
+     * signature, calls through the super types are not resolved.
+     * @param signature method signature.
+     * @return signatures of the callers, empty if the method is unknown.
+     */
+    public List<String> callersOf(String signature) {
+        return row(signature, callerStart, callers);
+    }
+
+    /**
+     * Check if the method invokes another method directly.
+     * @param callerId id of the caller.
+     * @param calleeId id of the callee.
+     * @return <code>true</code> if there is an edge.
+     */
+    public boolean calls(int callerId, int calleeId) {
+        return Arrays.binarySearch(callees, calleeStart[callerId], calleeStart[callerId + 1], calleeId) >= 0;
+    }
+
+    /**
+     * Get all edges as a flat list.
+     * @return edges, caller id in the high and callee id in the low 32 bits, sorted.
+     */
+    public long[] toEdgeList() {
+        long[] edges = new long[callees.length];
+        for (int id = 0; id < declared.length; id++) {
+            for (int e = calleeStart[id]; e < calleeStart[id + 1]; e++) {
+                edges[e] = (long) id << 32 | callees[e];
+            }
+        }
+        return edges;
+    }
+
+    private List<String> row(String signature, int[] start, final int[] ids) {
+        int id = methods.get(signature);
+        if (id < 0) {
+            return Collections.emptyList();
+        }
+        final int from = start[id];
+        final int size = start[id + 1] - from;
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+                }
+                return methods.getName(ids[from + index]);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
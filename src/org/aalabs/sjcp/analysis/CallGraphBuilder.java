@@ -0,0 +1,271 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.analysis;
+
+import org.aalabs.sjcp.JavaAttributeInfo;
+import org.aalabs.sjcp.JavaClassFile;
+import org.aalabs.sjcp.JavaMemberInfo;
+import org.aalabs.sjcp.code.CodeCursor;
+import org.aalabs.sjcp.code.Opcodes;
+import org.aalabs.sjcp.cp.ConstantPool;
+import org.aalabs.sjcp.cp.Utf8;
+import org.aalabs.sjcp.index.NameTable;
+import org.aalabs.sjcp.scan.ClassScanner;
+import org.aalabs.sjcp.scan.ClassSink;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Builder of the method-level {@link CallGraph}.
+ * <p>
+ * The code of every method is walked with a {@link CodeCursor}; each <code>invokevirtual</code>,
+ * <code>invokespecial</code>, <code>invokestatic</code> and <code>invokeinterface</code> adds an
+ * edge from the method to the method named by its method reference. Callee signatures are
+ * decoded once per constant pool entry, not per call site. <code>invokedynamic</code> call
+ * sites have no target method and are skipped. Classes are read and walked in parallel by the
+ * {@link ClassScanner}, the signatures are interned into int ids when the graph is built.
+ * @author Andrew Porokhin
+ */
+public class CallGraphBuilder {
+    /**
+     * Calls of the methods of the single class.
+     */
+    private static final class ClassCalls {
+        /** Declared methods. */
+        final String[] methods;
+        /** Distinct callees of the class. */
+        final String[] callees;
+        /** Calls of the method <code>i</code> are <code>calls[callStart[i] .. callStart[i + 1])</code>, indices in callees. */
+        final int[] callStart;
+        final int[] calls;
+
+        ClassCalls(String[] methods, String[] callees, int[] callStart, int[] calls) {
+            this.methods = methods;
+            this.callees = callees;
+            this.callStart = callStart;
+            this.calls = calls;
+        }
+    }
+
+    private final ClassScanner scanner;
+    private final ThreadLocal<CodeCursor> cursors = new ThreadLocal<CodeCursor>() {
+        @Override
+        protected CodeCursor initialValue() {
+            return new CodeCursor();
+        }
+    };
+
+    /**
+     * Create builder with the default scanner reading full constant pools.
+     */
+    public CallGraphBuilder() {
+        this(new ClassScanner());
+        scanner.setMode(ClassScanner.Mode.FULL);
+    }
+
+    /**
+     * Create builder.
+     * @param scanner scanner used to read the classes.
+     */
+    public CallGraphBuilder(ClassScanner scanner) {
+        this.scanner = scanner;
+    }
+
+    /**
+     * Build call graph of all classes in the roots.
+     * @param roots class directories, class files, jar, zip or jmod files.
+     * @return call graph.
+     * @throws IOException if a root can't be read.
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    public CallGraph build(Collection<File> roots) throws IOException, InterruptedException {
+        final Queue<ClassCalls> results = new ConcurrentLinkedQueue<ClassCalls>();
+        scanner.scan(roots, new ClassSink() {
+            @Override
+            public void classParsed(String location, JavaClassFile classFile) {
+                ClassCalls calls;
+                try {
+                    calls = extract(classFile, cursors.get());
+                } catch (RuntimeException ex) {
+                    classFailed(location, ex);
+                    return;
+                }
+                if (calls != null) {
+                    results.add(calls);
+                }
+            }
+        });
+        return toGraph(results);
+    }
+
+    /**
+     * Get calls of the single class.
+     * @param classFile parsed class, not in the header-only mode.
+     * @return signatures of the callees by the signature of the calling method, in the order
+     *         of declaration.
+     */
+    public static Map<String, Set<String>> getCalls(JavaClassFile classFile) {
+        Map<String, Set<String>> result = new LinkedHashMap<String, Set<String>>();
+        ClassCalls calls = extract(classFile, new CodeCursor());
+        if (calls != null) {
+            for (int i = 0; i < calls.methods.length; i++) {
+                Set<String> callees = new LinkedHashSet<String>();
+                for (int c = calls.callStart[i]; c < calls.callStart[i + 1]; c++) {
+                    callees.add(calls.callees[calls.calls[c]]);
+                }
+                result.put(calls.methods[i], callees);
+            }
+        }
+        return result;
+    }
+
+    private static ClassCalls extract(JavaClassFile classFile, CodeCursor cursor) {
+        String owner = classFile.getCanonicalName();
+        if (owner == null) {
+            return null;
+        }
+        ConstantPool pool = classFile.getConstantPool();
+        List<JavaMemberInfo> members = classFile.getMethods();
+        String[] methods = new String[members.size()];
+        int[] callStart = new int[methods.length + 1];
+        int[] calls = new int[64];
+        int callCount = 0;
+        List<String> callees = new ArrayList<String>();
+        // Per constant pool entry: callee index + 1 and the last method that called it + 1.
+        int[] calleeIndex = new int[pool.getCount()];
+        int[] lastCaller = new int[pool.getCount()];
+
+        cursor.setConstantPool(pool);
+        try {
+            for (int m = 0; m < methods.length; m++) {
+                JavaMemberInfo method = members.get(m);
+                methods[m] = CallGraph.signature(owner, method.getName(), method.getDescriptor());
+                JavaAttributeInfo code = findCode(pool, method);
+                if (code != null) {
+                    cursor.reset(code);
+                    while (cursor.next()) {
+                        int opcode = cursor.getOpcode();
+                        if (opcode < Opcodes.INVOKEVIRTUAL || opcode > Opcodes.INVOKEINTERFACE) {
+                            continue;
+                        }
+                        int index = cursor.getConstantIndex();
+                        if (lastCaller[index] == m + 1) {
+                            continue;
+                        }
+                        lastCaller[index] = m + 1;
+                        if (calleeIndex[index] == 0) {
+                            callees.add(CallGraph.signature(String.valueOf(cursor.getClassName()),
+                                    String.valueOf(cursor.getMemberName()), String.valueOf(cursor.getMemberDescriptor())));
+                            calleeIndex[index] = callees.size();
+                        }
+                        if (callCount == calls.length) {
+                            calls = Arrays.copyOf(calls, callCount * 2);
+                        }
+                        calls[callCount++] = calleeIndex[index] - 1;
+                    }
+                }
+                callStart[m + 1] = callCount;
+            }
+        } finally {
+            cursor.setConstantPool(null);
+        }
+        return new ClassCalls(methods, callees.toArray(new String[0]), callStart, Arrays.copyOf(calls, callCount));
+    }
+
+    private static JavaAttributeInfo findCode(ConstantPool pool, JavaMemberInfo method) {
+        for (JavaAttributeInfo attribute : method.getAttributes()) {
+            Utf8 name = pool.getUtf8(attribute.getNameIndex());
+            if (name != null && name.contentEquals("Code")) {
+                return attribute;
+            }
+        }
+        return null;
+    }
+
+    private static CallGraph toGraph(Collection<ClassCalls> results) {
+        int methodCount = 0;
+        int edgeCount = 0;
+        for (ClassCalls result : results) {
+            methodCount += result.methods.length;
+            edgeCount += result.calls.length;
+        }
+
+        NameTable methods = new NameTable(methodCount * 2);
+        for (ClassCalls result : results) {
+            for (String method : result.methods) {
+                methods.add(method);
+            }
+        }
+        int declaredCount = methods.size();
+
+        int[] sources = new int[edgeCount];
+        int[] targets = new int[edgeCount];
+        int e = 0;
+        for (ClassCalls result : results) {
+            int[] calleeIds = new int[result.callees.length];
+            for (int i = 0; i < calleeIds.length; i++) {
+                calleeIds[i] = methods.add(result.callees[i]);
+            }
+            for (int m = 0; m < result.methods.length; m++) {
+                int source = methods.get(result.methods[m]);
+                for (int c = result.callStart[m]; c < result.callStart[m + 1]; c++) {
+                    sources[e] = source;
+                    targets[e] = calleeIds[result.calls[c]];
+                    e++;
+                }
+            }
+        }
+
+        int n = methods.size();
+        boolean[] declared = new boolean[n];
+        // Declared methods are interned first.
+        Arrays.fill(declared, 0, declaredCount, true);
+
+        int[] calleeStart = new int[n + 1];
+        int[] callees = CompressedRows.sortRows(sources, targets, n, calleeStart);
+
+        // Reverse rows: walking the callers in order keeps every row sorted.
+        int[] callerStart = new int[n + 1];
+        for (int callee : callees) {
+            callerStart[callee + 1]++;
+        }
+        for (int i = 1; i <= n; i++) {
+            callerStart[i] += callerStart[i - 1];
+        }
+        int[] callers = new int[callees.length];
+        int[] next = Arrays.copyOf(callerStart, n);
+        for (int caller = 0; caller < n; caller++) {
+            for (int i = calleeStart[caller]; i < calleeStart[caller + 1]; i++) {
+                callers[next[callees[i]]++] = caller;
+            }
+        }
+        return new CallGraph(methods, declared, calleeStart, callees, callerStart, callers);
+    }
+}
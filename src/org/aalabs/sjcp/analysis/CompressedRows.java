@@ -0,0 +1,79 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Compressed sparse rows of the int graphs: edges grouped by the source, targets of every
+ * source sorted and deduplicated in a single array.
+ * @author Andrew Porokhin
+ */
+final class CompressedRows {
+    private CompressedRows() {
+    }
+
+    /**
+     * Group edges by the source into sorted rows without duplicates. Duplicates come from the
+     * same class found in several roots.
+     * @param sources source of every edge.
+     * @param targets target of every edge.
+     * @param n number of the nodes.
+     * @param start receives start of every row, <code>n + 1</code> entries.
+     * @return targets of the rows.
+     */
+    static int[] sortRows(int[] sources, int[] targets, int n, int[] start) {
+        // Counting sort by source, then sort and deduplicate every row.
+        int edgeCount = sources.length;
+        for (int i = 0; i < edgeCount; i++) {
+            start[sources[i] + 1]++;
+        }
+        for (int i = 1; i <= n; i++) {
+            start[i] += start[i - 1];
+        }
+        int[] rows = new int[edgeCount];
+        int[] next = Arrays.copyOf(start, n);
+        for (int i = 0; i < edgeCount; i++) {
+            rows[next[sources[i]]++] = targets[i];
+        }
+        int size = 0;
+        int rowStart = 0;
+        for (int id = 0; id < n; id++) {
+            int rowEnd = start[id + 1];
+            Arrays.sort(rows, rowStart, rowEnd);
+            start[id] = size;
+            for (int i = rowStart; i < rowEnd; i++) {
+                if (i == rowStart || rows[i] != rows[i - 1]) {
+                    rows[size++] = rows[i];
+                }
+            }
+            rowStart = rowEnd;
+        }
+        start[n] = size;
+        return size == edgeCount ? rows : Arrays.copyOf(rows, size);
+    }
+}
@@ -0,0 +1,500 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.analysis;
+
+import org.aalabs.sjcp.ClassFileVisitor;
+import org.aalabs.sjcp.ClassParser;
+import org.aalabs.sjcp.cp.ConstantPoolInfo;
+import org.aalabs.sjcp.cp.PackedConstantPool;
+import org.aalabs.sjcp.cp.Utf8;
+import org.aalabs.sjcp.scan.ClassDataSink;
+import org.aalabs.sjcp.scan.ClassScanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Multi-pattern search over the constant pools of the classes.
+ * <p>
+ * All patterns are compiled into one Aho-Corasick automaton over the modified UTF-8 bytes,
+ * which is run over the bytes of every UTF8 constant while the constant pool is walked; no
+ * strings or constant objects are created. Only a class with a candidate match is parsed
+ * further (with a {@link ClassParser} kept per thread) to check how the matched constant is
+ * used: string literals must be referenced by a string constant, method names by a name and
+ * type with a method descriptor or by a declared method, annotation types by an annotation
+ * attribute. Text patterns need no check.
+ * <p>
+ * The search is immutable and can be used from many threads.
+ * @author Andrew Porokhin
+ */
+public class ConstantSearch {
+    private static final String[] ANNOTATION_ATTRIBUTES = {
+            "RuntimeVisibleAnnotations", "RuntimeInvisibleAnnotations",
+            "RuntimeVisibleParameterAnnotations", "RuntimeInvisibleParameterAnnotations"
+    };
+
+    private final SearchPattern[] patterns;
+    private final int[] patternLengths;
+    private final boolean needsCheck;
+
+    /** Automaton: sorted edges of every state, failure links and outputs with the suffix outputs. */
+    private final int[] edgeStart;
+    private final byte[] edgeLabels;
+    private final int[] edgeTargets;
+    private final int[] fail;
+    private final int[] outputStart;
+    private final int[] outputs;
+
+    private final ThreadLocal<Matcher> matchers = new ThreadLocal<Matcher>() {
+        @Override
+        protected Matcher initialValue() {
+            return new Matcher();
+        }
+    };
+
+    /**
+     * Create search.
+     * @param patterns search patterns, duplicates are ignored.
+     */
+    public ConstantSearch(Collection<SearchPattern> patterns) {
+        this.patterns = new LinkedHashSet<SearchPattern>(patterns).toArray(new SearchPattern[0]);
+        if (this.patterns.length == 0) {
+            throw new IllegalArgumentException("No search patterns");
+        }
+        patternLengths = new int[this.patterns.length];
+        boolean check = false;
+        List<Map<Byte, Integer>> trie = new ArrayList<Map<Byte, Integer>>();
+        List<List<Integer>> ends = new ArrayList<List<Integer>>();
+        trie.add(new TreeMap<Byte, Integer>());
+        ends.add(new ArrayList<Integer>());
+        for (int p = 0; p < this.patterns.length; p++) {
+            byte[] bytes = encode(this.patterns[p].getConstant());
+            patternLengths[p] = bytes.length;
+            check |= this.patterns[p].getKind() != SearchPattern.Kind.TEXT;
+            int state = 0;
+            for (byte b : bytes) {
+                Integer next = trie.get(state).get(b);
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(state).put(b, next);
+                    trie.add(new TreeMap<Byte, Integer>());
+                    ends.add(new ArrayList<Integer>());
+                }
+                state = next;
+            }
+            ends.get(state).add(p);
+        }
+        needsCheck = check;
+
+        int n = trie.size();
+        edgeStart = new int[n + 1];
+        for (int s = 0; s < n; s++) {
+            edgeStart[s + 1] = edgeStart[s] + trie.get(s).size();
+        }
+        edgeLabels = new byte[edgeStart[n]];
+        edgeTargets = new int[edgeStart[n]];
+        for (int s = 0; s < n; s++) {
+            int e = edgeStart[s];
+            // Signed byte order, the same as the binary search in next().
+            for (Map.Entry<Byte, Integer> edge : trie.get(s).entrySet()) {
+                edgeLabels[e] = edge.getKey();
+                edgeTargets[e] = edge.getValue();
+                e++;
+            }
+        }
+
+        // Breadth-first: failure link of a state is the longest proper suffix in the trie,
+        // outputs include the outputs of the failure state.
+        fail = new int[n];
+        List<List<Integer>> allOutputs = new ArrayList<List<Integer>>(n);
+        for (int s = 0; s < n; s++) {
+            allOutputs.add(new ArrayList<Integer>(ends.get(s)));
+        }
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+            queue[tail++] = edgeTargets[e];
+        }
+        while (head < tail) {
+            int s = queue[head++];
+            for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+                int child = edgeTargets[e];
+                int f = fail[s];
+                int target;
+                while ((target = edge(f, edgeLabels[e])) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = target >= 0 && target != child ? target : 0;
+                allOutputs.get(child).addAll(allOutputs.get(fail[child]));
+                queue[tail++] = child;
+            }
+        }
+
+        outputStart = new int[n + 1];
+        for (int s = 0; s < n; s++) {
+            outputStart[s + 1] = outputStart[s] + allOutputs.get(s).size();
+        }
+        outputs = new int[outputStart[n]];
+        for (int s = 0; s < n; s++) {
+            int o = outputStart[s];
+            for (int p : allOutputs.get(s)) {
+                outputs[o++] = p;
+            }
+        }
+    }
+
+    /**
+     * Search the classes in the roots.
+     * @param roots class directories, class files, jar, zip or jmod files.
+     * @param scanner scanner used to read the classes.
+     * @return matched classes in no particular order.
+     * @throws IOException if a root can't be read.
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    public List<SearchResult> search(Collection<File> roots, ClassScanner scanner)
+            throws IOException, InterruptedException {
+        final Queue<SearchResult> results = new ConcurrentLinkedQueue<SearchResult>();
+        scanner.scanData(roots, new ClassDataSink() {
+            @Override
+            public void classRead(String location, ByteBuffer data) {
+                SearchResult result;
+                try {
+                    result = matchers.get().match(location, data);
+                } catch (RuntimeException ex) {
+                    classFailed(location, ex);
+                    return;
+                }
+                if (result != null) {
+                    results.add(result);
+                }
+            }
+        });
+        return new ArrayList<SearchResult>(results);
+    }
+
+    /**
+     * Search the classes in the roots with the default scanner.
+     * @param roots class directories, class files, jar, zip or jmod files.
+     * @return matched classes in no particular order.
+     * @throws IOException if a root can't be read.
+     * @throws InterruptedException if the calling thread is interrupted.
+     * @see #search(Collection, ClassScanner)
+     */
+    public List<SearchResult> search(Collection<File> roots) throws IOException, InterruptedException {
+        return search(roots, new ClassScanner());
+    }
+
+    /**
+     * Match the single class.
+     * @param buffer buffer with the class file, starting at the buffer position.
+     * @return matched patterns, empty if the class doesn't match.
+     */
+    public List<SearchPattern> match(ByteBuffer buffer) {
+        SearchResult result = matchers.get().match(null, buffer);
+        return result != null ? result.getPatterns() : Collections.<SearchPattern>emptyList();
+    }
+
+    /**
+     * Get target of the edge from the state.
+     * @return target state or <code>-1</code> if there is no edge.
+     */
+    private int edge(int state, byte label) {
+        int low = edgeStart[state];
+        int high = edgeStart[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            byte l = edgeLabels[mid];
+            if (l < label) {
+                low = mid + 1;
+            } else if (l > label) {
+                high = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] encode(String s) {
+        byte[] bytes = new byte[s.length() * 3];
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x01 && c <= 0x7F) {
+                bytes[length++] = (byte) c;
+            } else if (c <= 0x7FF) {
+                bytes[length++] = (byte) (0xC0 | (c >> 6));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                bytes[length++] = (byte) (0xE0 | (c >> 12));
+                bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Per-thread matching state.
+     */
+    private final class Matcher extends ClassFileVisitor {
+        private final ClassParser parser = new ClassParser();
+        private final boolean[] matched = new boolean[patterns.length];
+        /** Whole UTF8 constants equal to the patterns which need a check: pattern and index. */
+        private int[] candidatePatterns = new int[16];
+        private int[] candidateIndices = new int[16];
+        private int candidateCount;
+        private boolean anyMatch;
+
+        private ByteBuffer buffer;
+        private PackedConstantPool pool;
+        private String className;
+
+        SearchResult match(String location, ByteBuffer data) {
+            ByteBuffer buffer = data.order() == ByteOrder.BIG_ENDIAN
+                    ? data : data.duplicate().order(ByteOrder.BIG_ENDIAN);
+            Arrays.fill(matched, false);
+            candidateCount = 0;
+            anyMatch = false;
+            scanConstants(buffer);
+            if (!anyMatch) {
+                return null;
+            }
+
+            this.buffer = buffer;
+            try {
+                parser.parse(buffer, this);
+            } finally {
+                parser.reset();
+                this.buffer = null;
+                this.pool = null;
+            }
+
+            List<SearchPattern> found = new ArrayList<SearchPattern>();
+            for (int p = 0; p < patterns.length; p++) {
+                if (matched[p]) {
+                    found.add(patterns[p]);
+                }
+            }
+            return found.isEmpty() ? null : new SearchResult(location, className, found);
+        }
+
+        private void scanConstants(ByteBuffer buffer) {
+            int offset = buffer.position();
+            if (buffer.getInt(offset) != 0xCAFEBABE) {
+                throw new IllegalArgumentException("Incorrect Java Class File, wrong signature");
+            }
+            int count = buffer.getShort(offset + 8) & 0xFFFF;
+            offset += 10;
+            for (int index = 1; index < count; index++) {
+                byte tag = buffer.get(offset);
+                if (tag == ConstantPoolInfo.CONSTANT_UTF8) {
+                    int length = buffer.getShort(offset + 1) & 0xFFFF;
+                    scanUtf8(buffer, offset + 3, length, index);
+                    offset += 3 + length;
+                } else {
+                    offset += 1 + ConstantPoolInfo.getConstantPoolInfoLength(tag, buffer, offset + 1);
+                    if (tag == ConstantPoolInfo.CONSTANT_DOUBLE || tag == ConstantPoolInfo.CONSTANT_LONG) {
+                        index++;
+                    }
+                }
+            }
+        }
+
+        private void scanUtf8(ByteBuffer buffer, int offset, int length, int index) {
+            int state = 0;
+            for (int i = 0; i < length; i++) {
+                byte b = buffer.get(offset + i);
+                int next;
+                while ((next = edge(state, b)) < 0 && state != 0) {
+                    state = fail[state];
+                }
+                state = next >= 0 ? next : 0;
+                for (int o = outputStart[state]; o < outputStart[state + 1]; o++) {
+                    int p = outputs[o];
+                    if (patterns[p].getKind() == SearchPattern.Kind.TEXT) {
+                        matched[p] = true;
+                        anyMatch = true;
+                    } else if (patternLengths[p] == length && i == length - 1) {
+                        addCandidate(p, index);
+                        anyMatch = true;
+                    }
+                }
+            }
+        }
+
+        private void addCandidate(int pattern, int index) {
+            if (candidateCount == candidatePatterns.length) {
+                candidatePatterns = Arrays.copyOf(candidatePatterns, candidateCount * 2);
+                candidateIndices = Arrays.copyOf(candidateIndices, candidateCount * 2);
+            }
+            candidatePatterns[candidateCount] = pattern;
+            candidateIndices[candidateCount] = index;
+            candidateCount++;
+        }
+
+        /**
+         * Mark candidates of the kind with the UTF8 index as matched.
+         */
+        private void confirm(SearchPattern.Kind kind, int index) {
+            for (int c = 0; c < candidateCount; c++) {
+                if (candidateIndices[c] == index && patterns[candidatePatterns[c]].getKind() == kind) {
+                    matched[candidatePatterns[c]] = true;
+                }
+            }
+        }
+
+        private boolean hasCandidates(SearchPattern.Kind kind) {
+            for (int c = 0; c < candidateCount; c++) {
+                if (!matched[candidatePatterns[c]] && patterns[candidatePatterns[c]].getKind() == kind) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean visitClass(PackedConstantPool constantPool, int accessFlags, int thisClassIndex) {
+            pool = constantPool;
+            Utf8 name = constantPool.getClassName(thisClassIndex);
+            className = name != null ? name.toString() : null;
+            if (candidateCount == 0) {
+                // Only text patterns, nothing to check.
+                return false;
+            }
+            for (int i = 1, count = constantPool.getCount(); i < count; i++) {
+                byte tag = constantPool.getTag(i);
+                if (tag == ConstantPoolInfo.CONSTANT_STRING) {
+                    confirm(SearchPattern.Kind.STRING_LITERAL, constantPool.getStringIndex(i));
+                } else if (tag == ConstantPoolInfo.CONSTANT_NAME_AND_TYPE) {
+                    Utf8 descriptor = constantPool.getUtf8(constantPool.getNameAndTypeDescriptorIndex(i));
+                    if (descriptor != null && descriptor.getByteLength() > 0 && descriptor.byteAt(0) == '(') {
+                        confirm(SearchPattern.Kind.METHOD_NAME, constantPool.getNameAndTypeNameIndex(i));
+                    }
+                }
+            }
+            return hasCandidates(SearchPattern.Kind.METHOD_NAME) || hasCandidates(SearchPattern.Kind.ANNOTATION);
+        }
+
+        @Override
+        public boolean visitField(int accessFlags, int nameIndex, int descriptorIndex, int attributesOffset) {
+            scanAnnotations(attributesOffset);
+            return true;
+        }
+
+        @Override
+        public boolean visitMethod(int accessFlags, int nameIndex, int descriptorIndex, int attributesOffset) {
+            confirm(SearchPattern.Kind.METHOD_NAME, nameIndex);
+            scanAnnotations(attributesOffset);
+            return true;
+        }
+
+        @Override
+        public boolean visitAttribute(int nameIndex, int offset, int length) {
+            scanAnnotationAttribute(nameIndex, offset);
+            return true;
+        }
+
+        private void scanAnnotations(int attributesOffset) {
+            if (!hasCandidates(SearchPattern.Kind.ANNOTATION)) {
+                return;
+            }
+            int count = u2(attributesOffset);
+            int offset = attributesOffset + 2;
+            for (int i = 0; i < count; i++) {
+                scanAnnotationAttribute(u2(offset), offset + 6);
+                offset += 6 + buffer.getInt(offset + 2);
+            }
+        }
+
+        private void scanAnnotationAttribute(int nameIndex, int offset) {
+            Utf8 name = pool.getUtf8(nameIndex);
+            if (name == null || name.getByteLength() < 25 || name.byteAt(0) != 'R') {
+                return;
+            }
+            if (name.contentEquals(ANNOTATION_ATTRIBUTES[0]) || name.contentEquals(ANNOTATION_ATTRIBUTES[1])) {
+                scanAnnotationList(offset);
+            } else if (name.contentEquals(ANNOTATION_ATTRIBUTES[2]) || name.contentEquals(ANNOTATION_ATTRIBUTES[3])) {
+                int parameters = buffer.get(offset) & 0xFF;
+                offset++;
+                for (int i = 0; i < parameters; i++) {
+                    offset = scanAnnotationList(offset);
+                }
+            }
+        }
+
+        private int scanAnnotationList(int offset) {
+            int count = u2(offset);
+            offset += 2;
+            for (int i = 0; i < count; i++) {
+                offset = scanAnnotation(offset);
+            }
+            return offset;
+        }
+
+        private int scanAnnotation(int offset) {
+            confirm(SearchPattern.Kind.ANNOTATION, u2(offset));
+            int pairs = u2(offset + 2);
+            offset += 4;
+            for (int i = 0; i < pairs; i++) {
+                offset = scanElementValue(offset + 2);
+            }
+            return offset;
+        }
+
+        private int scanElementValue(int offset) {
+            byte tag = buffer.get(offset);
+            offset++;
+            switch (tag) {
+                case 'e':
+                    return offset + 4;
+                case '@':
+                    return scanAnnotation(offset);
+                case '[': {
+                    int count = u2(offset);
+                    offset += 2;
+                    for (int i = 0; i < count; i++) {
+                        offset = scanElementValue(offset);
+                    }
+                    return offset;
+                }
+                default:
+                    // Constant and class values: B C D F I J S Z s c
+                    return offset + 2;
+            }
+        }
+
+        private int u2(int offset) {
+            return buffer.getShort(offset) & 0xFFFF;
+        }
+    }
+}
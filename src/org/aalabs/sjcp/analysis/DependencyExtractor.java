@@ -0,0 +1,230 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.analysis;
+
+import org.aalabs.sjcp.JavaClassFile;
+import org.aalabs.sjcp.JavaMemberInfo;
+import org.aalabs.sjcp.cp.ConstantMethodType;
+import org.aalabs.sjcp.cp.ConstantNameAndType;
+import org.aalabs.sjcp.cp.ConstantPool;
+import org.aalabs.sjcp.cp.ConstantPoolInfo;
+import org.aalabs.sjcp.cp.PackedConstantPool;
+import org.aalabs.sjcp.cp.Utf8;
+import org.aalabs.sjcp.index.NameTable;
+import org.aalabs.sjcp.scan.ClassScanner;
+import org.aalabs.sjcp.scan.ClassSink;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Extractor of the class-to-class dependencies from the constant pools.
+ * <p>
+ * Dependencies of a class are the classes named by its class info entries (element types for
+ * arrays), by the descriptors of its name and type and method type entries, and by the
+ * descriptors of its own fields and methods. Names are collected as byte views of the class
+ * data and decoded only once per class. Classes are read in parallel by the
+ * {@link ClassScanner}.
+ * @author Andrew Porokhin
+ */
+public class DependencyExtractor {
+    /**
+     * Dependencies of the single class.
+     */
+    private static final class ClassDependencies {
+        final String name;
+        final String[] dependencies;
+
+        ClassDependencies(String name, String[] dependencies) {
+            this.name = name;
+            this.dependencies = dependencies;
+        }
+    }
+
+    private final ClassScanner scanner;
+
+    /**
+     * Create extractor with the default scanner reading full constant pools.
+     */
+    public DependencyExtractor() {
+        this(new ClassScanner());
+        scanner.setMode(ClassScanner.Mode.FULL);
+    }
+
+    /**
+     * Create extractor.
+     * @param scanner scanner used to read the classes.
+     */
+    public DependencyExtractor(ClassScanner scanner) {
+        this.scanner = scanner;
+    }
+
+    /**
+     * Extract dependencies of all classes in the roots.
+     * @param roots class directories, class files, jar, zip or jmod files.
+     * @return dependency graph.
+     * @throws IOException if a root can't be read.
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    public DependencyGraph extract(Collection<File> roots) throws IOException, InterruptedException {
+        final Queue<ClassDependencies> results = new ConcurrentLinkedQueue<ClassDependencies>();
+        scanner.scan(roots, new ClassSink() {
+            @Override
+            public void classParsed(String location, JavaClassFile classFile) {
+                ClassDependencies dependencies;
+                try {
+                    dependencies = extract(classFile);
+                } catch (RuntimeException ex) {
+                    classFailed(location, ex);
+                    return;
+                }
+                if (dependencies.name != null) {
+                    results.add(dependencies);
+                }
+            }
+        });
+        return build(results);
+    }
+
+    /**
+     * Extract dependencies of the single class.
+     * @param classFile parsed class, not in the header-only mode.
+     * @return names of the classes the class depends on.
+     */
+    public static Set<String> getDependencies(JavaClassFile classFile) {
+        return new LinkedHashSet<String>(Arrays.asList(extract(classFile).dependencies));
+    }
+
+    private static ClassDependencies extract(JavaClassFile classFile) {
+        ConstantPool pool = classFile.getConstantPool();
+        PackedConstantPool packed = pool instanceof PackedConstantPool ? (PackedConstantPool) pool : null;
+        Set<Utf8> found = new HashSet<Utf8>();
+        int count = pool.getCount();
+        for (int i = 1; i < count; i++) {
+            switch (pool.getTag(i)) {
+                case ConstantPoolInfo.CONSTANT_CLASS_INFO:
+                    addClassName(pool.getClassName(i), found);
+                    break;
+                case ConstantPoolInfo.CONSTANT_NAME_AND_TYPE:
+                    addDescriptor(pool.getUtf8(packed != null
+                            ? packed.getNameAndTypeDescriptorIndex(i)
+                            : ((ConstantNameAndType) pool.getConstantPoolInfo(i)).getDescriptorIndex()), found);
+                    break;
+                case ConstantPoolInfo.CONSTANT_METHOD_TYPE:
+                    addDescriptor(pool.getUtf8(packed != null
+                            ? packed.getMethodTypeDescriptorIndex(i)
+                            : ((ConstantMethodType) pool.getConstantPoolInfo(i)).getDescriptorIndex()), found);
+                    break;
+                default:
+                    break;
+            }
+        }
+        for (JavaMemberInfo field : classFile.getFields()) {
+            addDescriptor(pool.getUtf8(field.getDescriptorIndex()), found);
+        }
+        for (JavaMemberInfo method : classFile.getMethods()) {
+            addDescriptor(pool.getUtf8(method.getDescriptorIndex()), found);
+        }
+
+        Utf8 self = pool.getClassName(classFile.getThisClassIndex());
+        if (self != null) {
+            found.remove(self);
+        }
+        String[] dependencies = new String[found.size()];
+        int size = 0;
+        for (Utf8 name : found) {
+            dependencies[size++] = name.toString();
+        }
+        return new ClassDependencies(classFile.getCanonicalName(), dependencies);
+    }
+
+    private static void addClassName(Utf8 name, Set<Utf8> found) {
+        if (name == null || name.getByteLength() == 0) {
+            return;
+        }
+        if (name.byteAt(0) == '[') {
+            addDescriptor(name, found);
+        } else {
+            found.add(name);
+        }
+    }
+
+    /**
+     * Add class names of the field or method descriptor.
+     */
+    private static void addDescriptor(Utf8 descriptor, Set<Utf8> found) {
+        if (descriptor == null) {
+            return;
+        }
+        int length = descriptor.getByteLength();
+        for (int i = 0; i < length; i++) {
+            if (descriptor.byteAt(i) == 'L') {
+                int end = i + 1;
+                while (end < length && descriptor.byteAt(end) != ';') {
+                    end++;
+                }
+                if (end > i + 1) {
+                    found.add(descriptor.slice(i + 1, end));
+                }
+                i = end;
+            }
+        }
+    }
+
+    private static DependencyGraph build(Collection<ClassDependencies> results) {
+        NameTable names = new NameTable(results.size() * 2);
+        int edgeCount = 0;
+        for (ClassDependencies result : results) {
+            names.add(result.name);
+            edgeCount += result.dependencies.length;
+        }
+
+        int[] sources = new int[edgeCount];
+        int[] targets = new int[edgeCount];
+        int e = 0;
+        for (ClassDependencies result : results) {
+            int source = names.get(result.name);
+            for (String dependency : result.dependencies) {
+                sources[e] = source;
+                targets[e] = names.add(dependency);
+                e++;
+            }
+        }
+
+        int n = names.size();
+        boolean[] scanned = new boolean[n];
+        for (ClassDependencies result : results) {
+            scanned[names.get(result.name)] = true;
+        }
+
+        int[] start = new int[n + 1];
+        int[] rows = CompressedRows.sortRows(sources, targets, n, start);
+        return new DependencyGraph(names, scanned, start, rows);
+    }
+}
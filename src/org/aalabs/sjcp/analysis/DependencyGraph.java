@@ -0,0 +1,150 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.analysis;
+
+import org.aalabs.sjcp.index.NameTable;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class-to-class dependencies found by the {@link DependencyExtractor}.
+ * <p>
+ * Every class name has an int id; dependencies of the class are a sorted run of ids in a single
+ * array (compressed sparse rows), so the graph costs one int per edge plus a row start per class.
+ * @author Andrew Porokhin
+ */
+public class DependencyGraph {
+    private final NameTable names;
+    private final boolean[] scanned;
+    private final int[] start;
+    private final int[] targets;
+
+    DependencyGraph(NameTable names, boolean[] scanned, int[] start, int[] targets) {
+        this.names = names;
+        this.scanned = scanned;
+        this.start = start;
+        this.targets = targets;
+    }
+
+    /**
+     * Get number of the classes, including the classes which are only referenced.
+     * @return number of the classes.
+     */
+    public int getClassCount() {
+        return names.size();
+    }
+
+    public int getEdgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * Get id of the class.
+     * @param canonicalName class name in the internal form.
+     * @return id of the class or <code>-1</code> if the class is unknown.
+     */
+    public int getId(String canonicalName) {
+        return names.get(canonicalName);
+    }
+
+    public String getName(int id) {
+        return names.getName(id);
+    }
+
+    /**
+     * Check if the class was scanned or is only referenced by the scanned classes.
+     * @param id id of the class.
+     * @return <code>true</code> if the class was scanned.
+     */
+    public boolean isScanned(int id) {
+        return scanned[id];
+    }
+
+    /**
+     * Get classes the class depends on.
+     * @param id id of the class.
+     * @return sorted ids of the dependencies.
+     */
+    public int[] getDependencies(int id) {
+        return Arrays.copyOfRange(targets, start[id], start[id + 1]);
+    }
+
+    /**
+     * Get classes the class depends on.
+     * @param canonicalName class name.
+     * @return names of the dependencies, empty if the class is unknown.
+     */
+    public List<String> getDependencies(String canonicalName) {
+        int id = names.get(canonicalName);
+        if (id < 0) {
+            return Collections.emptyList();
+        }
+        final int from = start[id];
+        final int size = start[id + 1] - from;
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+                }
+                return names.getName(targets[from + index]);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Check if the class depends on another class directly.
+     * @param id id of the class.
+     * @param dependencyId id of the dependency.
+     * @return <code>true</code> if there is an edge.
+     */
+    public boolean dependsOn(int id, int dependencyId) {
+        return Arrays.binarySearch(targets, start[id], start[id + 1], dependencyId) >= 0;
+    }
+
+    /**
+     * Get all edges as a flat list.
+     * @return edges, source id in the high and target id in the low 32 bits, sorted.
+     */
+    public long[] toEdgeList() {
+        long[] edges = new long[targets.length];
+        for (int id = 0; id < scanned.length; id++) {
+            for (int e = start[id]; e < start[id + 1]; e++) {
+                edges[e] = (long) id << 32 | targets[e];
+            }
+        }
+        return edges;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.analysis;
+
+/**
+ * Pattern of the {@link ConstantSearch}.
+ * @author Andrew Porokhin
+ */
+public final class SearchPattern {
+    /**
+     * What the pattern matches.
+     */
+    public enum Kind {
+        /** Text anywhere in any UTF8 constant. */
+        TEXT,
+        /** String literal equal to the text. */
+        STRING_LITERAL,
+        /** Annotation of the type named by the text, on the class or on its fields and methods. */
+        ANNOTATION,
+        /** Method with the name, declared by the class or referenced from it. */
+        METHOD_NAME
+    }
+
+    private final Kind kind;
+    private final String text;
+
+    private SearchPattern(Kind kind, String text) {
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Empty search pattern");
+        }
+        this.kind = kind;
+        this.text = text;
+    }
+
+    public static SearchPattern text(String text) {
+        return new SearchPattern(Kind.TEXT, text);
+    }
+
+    public static SearchPattern stringLiteral(String literal) {
+        return new SearchPattern(Kind.STRING_LITERAL, literal);
+    }
+
+    /**
+     * Create annotation pattern.
+     * @param annotationClassName annotation class name in the internal form, e.g.
+     *                            <code>java/lang/Deprecated</code>.
+     * @return search pattern.
+     */
+    public static SearchPattern annotation(String annotationClassName) {
+        return new SearchPattern(Kind.ANNOTATION, annotationClassName);
+    }
+
+    public static SearchPattern methodName(String methodName) {
+        return new SearchPattern(Kind.METHOD_NAME, methodName);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Get the UTF8 constant the pattern looks for: the descriptor for annotations, the text
+     * otherwise.
+     */
+    String getConstant() {
+        return kind == Kind.ANNOTATION ? "L" + text + ";" : text;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SearchPattern)) {
+            return false;
+        }
+        SearchPattern other = (SearchPattern) o;
+        return kind == other.kind && text.equals(other.text);
+    }
+
+    @Override
+    public int hashCode() {
+        return kind.hashCode() * 31 + text.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + text;
+    }
+}
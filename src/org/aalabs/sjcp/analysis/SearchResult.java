@@ -0,0 +1,70 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.analysis;
+
+import java.util.List;
+
+/**
+ * Class found by the {@link ConstantSearch}.
+ * @author Andrew Porokhin
+ */
+public final class SearchResult {
+    private final String location;
+    private final String className;
+    private final List<SearchPattern> patterns;
+
+    SearchResult(String location, String className, List<SearchPattern> patterns) {
+        this.location = location;
+        this.className = className;
+        this.patterns = patterns;
+    }
+
+    /**
+     * Get class file location.
+     * @return file path or <code>archive!/entry</code>.
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Get patterns matched by the class.
+     * @return matched patterns in the order they were given to the search.
+     */
+    public List<SearchPattern> getPatterns() {
+        return patterns;
+    }
+
+    @Override
+    public String toString() {
+        return className + " (" + location + ") " + patterns;
+    }
+}
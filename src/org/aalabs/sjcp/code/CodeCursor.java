@@ -0,0 +1,512 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.code;
+
+import org.aalabs.sjcp.JavaAttributeInfo;
+import org.aalabs.sjcp.cp.ConstantPool;
+import org.aalabs.sjcp.cp.Utf8;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Cursor over the instructions of a <code>Code</code> attribute.
+ * <p>
+ * The cursor decodes the instructions in place: {@link #next()} moves to the next
+ * instruction and the getters read its operands from the buffer, nothing is allocated per
+ * instruction. <code>wide</code> is folded into the instruction it modifies, the padding of
+ * <code>tableswitch</code> and <code>lookupswitch</code> is skipped. Constant pool references
+ * of field, method and class instructions are resolved through the index accessors of the
+ * constant pool set with {@link #setConstantPool(ConstantPool)}; the <code>get...Index</code>
+ * methods resolve them without allocation, the {@link Utf8} getters create a view per call.
+ * <p>
+ * The cursor is reusable, call one of the <code>reset</code> methods for every method.
+ * <pre>
+ * CodeCursor cursor = new CodeCursor(classFile.getConstantPool());
+ * cursor.reset(codeAttribute);
+ * while (cursor.next()) {
+ *     if (cursor.getOpcode() == Opcodes.INVOKEVIRTUAL) {
+ *         Utf8 owner = cursor.getClassName();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * @author Andrew Porokhin
+ */
+public final class CodeCursor {
+    private ConstantPool constantPool;
+
+    private ByteBuffer buffer;
+    private int codeStart;
+    private int codeLength;
+    private int maxStack;
+    private int maxLocals;
+
+    private int offset;
+    private int nextOffset;
+    private int opcode = -1;
+    private boolean wide;
+    /** Buffer offset of the first operand; for switches of the default target. */
+    private int operands;
+
+    public CodeCursor() {
+    }
+
+    /**
+     * Create cursor.
+     * @param constantPool constant pool of the class, used to resolve the references.
+     */
+    public CodeCursor(ConstantPool constantPool) {
+        this.constantPool = constantPool;
+    }
+
+    public ConstantPool getConstantPool() {
+        return constantPool;
+    }
+
+    public void setConstantPool(ConstantPool constantPool) {
+        this.constantPool = constantPool;
+    }
+
+    /**
+     * Position the cursor before the first instruction of the code attribute.
+     * @param code <code>Code</code> attribute of the method.
+     */
+    public void reset(JavaAttributeInfo code) {
+        reset(code.getData(), 0);
+    }
+
+    /**
+     * Position the cursor before the first instruction of the code attribute.
+     * @param buffer buffer with the class file.
+     * @param attributeOffset offset of the attribute data: <code>max_stack</code> follows
+     *                        the attribute name and length.
+     */
+    public void reset(ByteBuffer buffer, int attributeOffset) {
+        if (buffer.order() != ByteOrder.BIG_ENDIAN) {
+            buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        }
+        this.buffer = buffer;
+        maxStack = buffer.getShort(attributeOffset) & 0xFFFF;
+        maxLocals = buffer.getShort(attributeOffset + 2) & 0xFFFF;
+        codeLength = buffer.getInt(attributeOffset + 4);
+        codeStart = attributeOffset + 8;
+        if (codeLength < 0 || codeStart + codeLength > buffer.limit()) {
+            throw new IllegalArgumentException("Code is too long: " + (codeLength & 0xFFFFFFFFL));
+        }
+        offset = 0;
+        nextOffset = 0;
+        opcode = -1;
+        wide = false;
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    public int getMaxLocals() {
+        return maxLocals;
+    }
+
+    public int getCodeLength() {
+        return codeLength;
+    }
+
+    /**
+     * Move to the next instruction.
+     * @return <code>true</code> if the cursor is on an instruction, <code>false</code> at the
+     *         end of the code.
+     * @throws IllegalArgumentException if the opcode is not defined or the instruction goes
+     *         past the end of the code.
+     */
+    public boolean next() {
+        offset = nextOffset;
+        if (offset >= codeLength) {
+            opcode = -1;
+            return false;
+        }
+        int position = codeStart + offset;
+        opcode = buffer.get(position) & 0xFF;
+        wide = false;
+        operands = position + 1;
+        int length = Opcodes.getLength(opcode);
+        if (length == 0) {
+            length = variableLength(position);
+        } else if (length < 0) {
+            throw new IllegalArgumentException("Unknown opcode " + opcode + " at " + offset);
+        }
+        if (length > codeLength - offset) {
+            throw new IllegalArgumentException("Instruction " + Opcodes.getName(opcode) + " at " + offset
+                    + " runs past the end of the code");
+        }
+        nextOffset = offset + length;
+        return true;
+    }
+
+    private int variableLength(int position) {
+        if (opcode == Opcodes.WIDE) {
+            if (offset + 1 >= codeLength) {
+                throw new IllegalArgumentException("Instruction wide at " + offset + " runs past the end of the code");
+            }
+            wide = true;
+            opcode = buffer.get(position + 1) & 0xFF;
+            operands = position + 2;
+            switch (opcode) {
+                case Opcodes.IINC:
+                    return 6;
+                case Opcodes.ILOAD: case Opcodes.LLOAD: case Opcodes.FLOAD: case Opcodes.DLOAD: case Opcodes.ALOAD:
+                case Opcodes.ISTORE: case Opcodes.LSTORE: case Opcodes.FSTORE: case Opcodes.DSTORE: case Opcodes.ASTORE:
+                case Opcodes.RET:
+                    return 4;
+                default:
+                    throw new IllegalArgumentException("Opcode " + opcode + " can't be wide at " + offset);
+            }
+        }
+
+        // Operands start at the next offset that is a multiple of four from the code start.
+        int padding = 3 - (offset & 3);
+        operands = position + 1 + padding;
+        int fixed = 1 + padding + (opcode == Opcodes.TABLESWITCH ? 12 : 8);
+        if (fixed > codeLength - offset) {
+            throw new IllegalArgumentException("Instruction " + Opcodes.getName(opcode) + " at " + offset
+                    + " runs past the end of the code");
+        }
+        long size;
+        if (opcode == Opcodes.TABLESWITCH) {
+            size = 4L * ((long) buffer.getInt(operands + 8) - buffer.getInt(operands + 4) + 1);
+        } else {
+            size = 8L * buffer.getInt(operands + 4);
+        }
+        if (size < 0 || fixed + size > codeLength - offset) {
+            throw new IllegalArgumentException("Bad " + Opcodes.getName(opcode) + " at " + offset);
+        }
+        return (int) (fixed + size);
+    }
+
+    /**
+     * @return opcode of the current instruction, for <code>wide</code> instructions the opcode
+     *         of the modified instruction; -1 if the cursor is not on an instruction.
+     */
+    public int getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * @return offset of the current instruction from the start of the code.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return length of the current instruction with the operands and the padding.
+     */
+    public int getLength() {
+        return nextOffset - offset;
+    }
+
+    /**
+     * @return <code>true</code> if the instruction is modified by <code>wide</code>.
+     */
+    public boolean isWide() {
+        return wide;
+    }
+
+    /**
+     * Get local variable index of load, store, <code>iinc</code> and <code>ret</code>,
+     * including the <code>_0</code> ... <code>_3</code> forms.
+     * @return local variable index.
+     */
+    public int getLocalIndex() {
+        if (opcode >= Opcodes.ILOAD_0 && opcode <= Opcodes.ALOAD_3) {
+            return (opcode - Opcodes.ILOAD_0) & 3;
+        }
+        if (opcode >= Opcodes.ISTORE_0 && opcode <= Opcodes.ASTORE_3) {
+            return (opcode - Opcodes.ISTORE_0) & 3;
+        }
+        if ((opcode >= Opcodes.ILOAD && opcode <= Opcodes.ALOAD)
+                || (opcode >= Opcodes.ISTORE && opcode <= Opcodes.ASTORE)
+                || opcode == Opcodes.IINC || opcode == Opcodes.RET) {
+            return wide ? u2(operands) : u1(operands);
+        }
+        throw noOperand("local variable");
+    }
+
+    /**
+     * @return increment of <code>iinc</code>.
+     */
+    public int getIncrement() {
+        if (opcode != Opcodes.IINC) {
+            throw noOperand("increment");
+        }
+        return wide ? buffer.getShort(operands + 2) : buffer.get(operands + 1);
+    }
+
+    /**
+     * Get immediate value: the value of <code>bipush</code>, <code>sipush</code> and
+     * <code>iconst_&lt;i&gt;</code>, the array type of <code>newarray</code>.
+     * @return value.
+     */
+    public int getIntOperand() {
+        switch (opcode) {
+            case Opcodes.BIPUSH:
+                return buffer.get(operands);
+            case Opcodes.SIPUSH:
+                return buffer.getShort(operands);
+            case Opcodes.NEWARRAY:
+                return u1(operands);
+            default:
+                if (opcode >= Opcodes.ICONST_M1 && opcode <= Opcodes.ICONST_5) {
+                    return opcode - Opcodes.ICONST_0;
+                }
+                throw noOperand("immediate");
+        }
+    }
+
+    /**
+     * Get constant pool index of <code>ldc</code>, field, method, <code>invokedynamic</code>
+     * and class instructions.
+     * @return constant pool index.
+     */
+    public int getConstantIndex() {
+        switch (opcode) {
+            case Opcodes.LDC:
+                return u1(operands);
+            case Opcodes.LDC_W:
+            case Opcodes.LDC2_W:
+            case Opcodes.GETSTATIC:
+            case Opcodes.PUTSTATIC:
+            case Opcodes.GETFIELD:
+            case Opcodes.PUTFIELD:
+            case Opcodes.INVOKEVIRTUAL:
+            case Opcodes.INVOKESPECIAL:
+            case Opcodes.INVOKESTATIC:
+            case Opcodes.INVOKEINTERFACE:
+            case Opcodes.INVOKEDYNAMIC:
+            case Opcodes.NEW:
+            case Opcodes.ANEWARRAY:
+            case Opcodes.CHECKCAST:
+            case Opcodes.INSTANCEOF:
+            case Opcodes.MULTIANEWARRAY:
+                return u2(operands);
+            default:
+                throw noOperand("constant pool");
+        }
+    }
+
+    /**
+     * @return number of dimensions of <code>multianewarray</code>.
+     */
+    public int getDimensions() {
+        if (opcode != Opcodes.MULTIANEWARRAY) {
+            throw noOperand("dimensions");
+        }
+        return u1(operands + 2);
+    }
+
+    /**
+     * @return <code>true</code> if the current instruction is a field or method access.
+     */
+    public boolean isMemberReference() {
+        return opcode >= Opcodes.GETSTATIC && opcode <= Opcodes.INVOKEINTERFACE;
+    }
+
+    /**
+     * @return <code>true</code> if the current instruction is a method invocation,
+     *         including <code>invokedynamic</code>.
+     */
+    public boolean isInvoke() {
+        return opcode >= Opcodes.INVOKEVIRTUAL && opcode <= Opcodes.INVOKEDYNAMIC;
+    }
+
+    /**
+     * Get class referenced by the instruction: owner of the field or method, class of
+     * <code>new</code>, <code>anewarray</code>, <code>checkcast</code>, <code>instanceof</code>
+     * and <code>multianewarray</code>. Creates a view, use {@link #getClassNameIndex()} to
+     * resolve the reference without allocation.
+     * @return internal class name or array descriptor, <code>null</code> for
+     *         <code>invokedynamic</code>.
+     */
+    public Utf8 getClassName() {
+        int index = getClassNameIndex();
+        return index != 0 ? constantPool.getUtf8(index) : null;
+    }
+
+    /**
+     * Get constant pool index of the name of the class referenced by the instruction.
+     * @return index of the UTF8 name, 0 for <code>invokedynamic</code>.
+     * @see #getClassName()
+     */
+    public int getClassNameIndex() {
+        switch (opcode) {
+            case Opcodes.NEW:
+            case Opcodes.ANEWARRAY:
+            case Opcodes.CHECKCAST:
+            case Opcodes.INSTANCEOF:
+            case Opcodes.MULTIANEWARRAY:
+                return constantPool.getClassNameIndex(u2(operands));
+            case Opcodes.INVOKEDYNAMIC:
+                return 0;
+            default:
+                if (isMemberReference()) {
+                    return constantPool.getClassNameIndex(constantPool.getRefClassIndex(u2(operands)));
+                }
+                throw noOperand("class");
+        }
+    }
+
+    /**
+     * @return name of the field or method referenced by the instruction.
+     * @see #getMemberNameIndex()
+     */
+    public Utf8 getMemberName() {
+        return constantPool.getUtf8(getMemberNameIndex());
+    }
+
+    /**
+     * @return descriptor of the field or method referenced by the instruction.
+     * @see #getMemberDescriptorIndex()
+     */
+    public Utf8 getMemberDescriptor() {
+        return constantPool.getUtf8(getMemberDescriptorIndex());
+    }
+
+    /**
+     * @return constant pool index of the UTF8 name of the referenced field or method.
+     */
+    public int getMemberNameIndex() {
+        return constantPool.getNameAndTypeNameIndex(nameAndTypeIndex());
+    }
+
+    /**
+     * @return constant pool index of the UTF8 descriptor of the referenced field or method.
+     */
+    public int getMemberDescriptorIndex() {
+        return constantPool.getNameAndTypeDescriptorIndex(nameAndTypeIndex());
+    }
+
+    private int nameAndTypeIndex() {
+        if (opcode == Opcodes.INVOKEDYNAMIC) {
+            return constantPool.getDynamicNameAndTypeIndex(u2(operands));
+        }
+        if (isMemberReference()) {
+            return constantPool.getRefNameAndTypeIndex(u2(operands));
+        }
+        throw noOperand("member");
+    }
+
+    /**
+     * Get target of the branch: <code>if&lt;cond&gt;</code>, <code>goto</code>,
+     * <code>jsr</code> and their wide forms.
+     * @return target offset from the start of the code.
+     */
+    public int getBranchTarget() {
+        if ((opcode >= Opcodes.IFEQ && opcode <= Opcodes.JSR)
+                || opcode == Opcodes.IFNULL || opcode == Opcodes.IFNONNULL) {
+            return offset + buffer.getShort(operands);
+        }
+        if (opcode == Opcodes.GOTO_W || opcode == Opcodes.JSR_W) {
+            return offset + buffer.getInt(operands);
+        }
+        throw noOperand("branch");
+    }
+
+    /**
+     * @return default target of <code>tableswitch</code> or <code>lookupswitch</code>,
+     *         offset from the start of the code.
+     */
+    public int getSwitchDefault() {
+        checkSwitch();
+        return offset + buffer.getInt(operands);
+    }
+
+    /**
+     * @return number of the cases of <code>tableswitch</code> or <code>lookupswitch</code>,
+     *         not including the default.
+     */
+    public int getSwitchCount() {
+        checkSwitch();
+        if (opcode == Opcodes.TABLESWITCH) {
+            return buffer.getInt(operands + 8) - buffer.getInt(operands + 4) + 1;
+        }
+        return buffer.getInt(operands + 4);
+    }
+
+    /**
+     * @param i case number, from 0 to {@link #getSwitchCount()} - 1.
+     * @return key of the case.
+     */
+    public int getSwitchKey(int i) {
+        checkCase(i);
+        if (opcode == Opcodes.TABLESWITCH) {
+            return buffer.getInt(operands + 4) + i;
+        }
+        return buffer.getInt(operands + 8 + 8 * i);
+    }
+
+    /**
+     * @param i case number, from 0 to {@link #getSwitchCount()} - 1.
+     * @return target of the case, offset from the start of the code.
+     */
+    public int getSwitchTarget(int i) {
+        checkCase(i);
+        if (opcode == Opcodes.TABLESWITCH) {
+            return offset + buffer.getInt(operands + 12 + 4 * i);
+        }
+        return offset + buffer.getInt(operands + 12 + 8 * i);
+    }
+
+    private void checkSwitch() {
+        if (opcode != Opcodes.TABLESWITCH && opcode != Opcodes.LOOKUPSWITCH) {
+            throw noOperand("switch");
+        }
+    }
+
+    private void checkCase(int i) {
+        if (i < 0 || i >= getSwitchCount()) {
+            throw new IndexOutOfBoundsException("Case " + i + ", count: " + getSwitchCount());
+        }
+    }
+
+    private IllegalStateException noOperand(String operand) {
+        return new IllegalStateException("No " + operand + " operand: "
+                + (opcode >= 0 ? Opcodes.getName(opcode) + " at " + offset : "not on an instruction"));
+    }
+
+    private int u1(int position) {
+        return buffer.get(position) & 0xFF;
+    }
+
+    private int u2(int position) {
+        return buffer.getShort(position) & 0xFFFF;
+    }
+
+    @Override
+    public String toString() {
+        return opcode >= 0 ? offset + ": " + Opcodes.getName(opcode) : "CodeCursor";
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.cp;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Constant pool of the Java class file.
+ * <p>
+ * All methods take 1-based constant pool indices exactly as they are stored in the class
+ * file, valid indices are from 1 to {@link #getCount()} - 1. Only the {@link #asList()} view
+ * is 0-based.
+ * @author Andrew Porokhin
+ */
+public abstract class ConstantPool {
+    /**
+     * Get <code>constant_pool_count</code> of the class file, that is the number of entries plus one.
+     * @return constant pool count.
+     */
+    public abstract int getCount();
+
+    /**
+     * Get constant pool entry.
+     * @param index 1-based constant pool index.
+     * @return constant pool info or <code>null</code> for the unusable slot.
+     */
+    public abstract ConstantPoolInfo getConstantPoolInfo(int index);
+
+    /**
+     * Get tag of the entry without decoding it.
+     * @param index 1-based constant pool index.
+     * @return tag or 0 for the unusable slot.
+     */
+    public abstract byte getTag(int index);
+
+    /**
+     * Get view of the UTF8 entry, the String is not decoded.
+     * @param index 1-based constant pool index.
+     * @return UTF8 view or <code>null</code> if the entry is not UTF8.
+     */
+    public abstract Utf8 getUtf8(int index);
+
+    /**
+     * Get view of the name of class info entry.
+     * @param index 1-based constant pool index of the class info.
+     * @return UTF8 view or <code>null</code> if the entry is not a class info.
+     */
+    public Utf8 getClassName(int index) {
+        if (index <= 0 || index >= getCount() || getTag(index) != ConstantPoolInfo.CONSTANT_CLASS_INFO) {
+            return null;
+        }
+        return getUtf8(getClassNameIndex(index));
+    }
+
+    /*
+     * Index accessors read the references of the entry without creating ConstantPoolInfo
+     * objects. All of them throw IllegalArgumentException if the entry has another type.
+     */
+
+    /**
+     * Get name index of the class info entry.
+     * @param index 1-based constant pool index.
+     * @return index of the UTF8 name.
+     */
+    public abstract int getClassNameIndex(int index);
+
+    /**
+     * Get class index of the field, method or interface method reference.
+     * @param index 1-based constant pool index.
+     * @return index of the class info.
+     */
+    public abstract int getRefClassIndex(int index);
+
+    /**
+     * Get name and type index of the field, method or interface method reference.
+     * @param index 1-based constant pool index.
+     * @return index of the name and type.
+     */
+    public abstract int getRefNameAndTypeIndex(int index);
+
+    /**
+     * Get name index of the name and type entry.
+     * @param index 1-based constant pool index.
+     * @return index of the UTF8 name.
+     */
+    public abstract int getNameAndTypeNameIndex(int index);
+
+    /**
+     * Get descriptor index of the name and type entry.
+     * @param index 1-based constant pool index.
+     * @return index of the UTF8 descriptor.
+     */
+    public abstract int getNameAndTypeDescriptorIndex(int index);
+
+    /**
+     * Get name and type index of the dynamic or invoke dynamic entry.
+     * @param index 1-based constant pool index.
+     * @return index of the name and type.
+     */
+    public abstract int getDynamicNameAndTypeIndex(int index);
+
+    /**
+     * Get read-only list view of the entries. The list is 0-based: element <code>i</code> is the
+     * entry with constant pool index <code>i + 1</code>, <code>null</code> for the unusable slot
+     * after long and double constants.
+     * @return list view of the pool.
+     */
+    public List<ConstantPoolInfo> asList() {
+        return new AbstractList<ConstantPoolInfo>() {
+            @Override
+            public ConstantPoolInfo get(int i) {
+                if (i < 0 || i >= size()) {
+                    throw new IndexOutOfBoundsException("Index: " + i + ", size: " + size());
+                }
+                return getConstantPoolInfo(i + 1);
+            }
+
+            @Override
+            public int size() {
+                return getCount() - 1;
+            }
+        };
+    }
+}
@@ -28,15 +28,13 @@ package org.aalabs.sjcp.cp;
 
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.util.logging.Logger;
+import java.nio.ByteBuffer;
 
 /**
  * Java Class File ConstantPoolInfo representation.
  * @author Andrew Porokhin
  */
 public class ConstantPoolInfo {
-    private static final Logger logger = Logger.getLogger(ConstantPoolInfo.class.getName());
-
     public static final byte CONSTANT_UTF8 = 1;
     public static final byte CONSTANT_INT = 3;
     public static final byte CONSTANT_FLOAT = 4;
@@ -48,6 +46,12 @@ public class ConstantPoolInfo {
     public static final byte CONSTANT_METHOD_REF = 10;
     public static final byte CONSTANT_INTERFACE_METHOD_REF = 11;
     public static final byte CONSTANT_NAME_AND_TYPE = 12;
+    public static final byte CONSTANT_METHOD_HANDLE = 15;
+    public static final byte CONSTANT_METHOD_TYPE = 16;
+    public static final byte CONSTANT_DYNAMIC = 17;
+    public static final byte CONSTANT_INVOKE_DYNAMIC = 18;
+    public static final byte CONSTANT_MODULE = 19;
+    public static final byte CONSTANT_PACKAGE = 20;
 
     /** Class Info TAG. */
     byte tag;
@@ -78,10 +82,131 @@ public class ConstantPoolInfo {
                 return new ConstantReference(tag,
                         di.readUnsignedShort(),
                         di.readUnsignedShort());
+            case CONSTANT_METHOD_HANDLE:
+                return new ConstantMethodHandle(di.readUnsignedByte(), di.readUnsignedShort());
+            case CONSTANT_METHOD_TYPE:
+                return new ConstantMethodType(di.readUnsignedShort());
+            case CONSTANT_DYNAMIC:
+            case CONSTANT_INVOKE_DYNAMIC:
+                return new ConstantDynamic(tag,
+                        di.readUnsignedShort(),
+                        di.readUnsignedShort());
+            case CONSTANT_MODULE:
+                return new ConstantModule(di.readUnsignedShort());
+            case CONSTANT_PACKAGE:
+                return new ConstantPackage(di.readUnsignedShort());
+            default:
+                // Length of the unknown entry is unknown too, the rest of the stream can't be read.
+                throw new IllegalArgumentException("Unknown constant type tag: " + tag);
+        }
+    }
+
+    /**
+     * Read constant pool info with absolute reads from the big-endian buffer.
+     * @param tag constant tag.
+     * @param buffer buffer with the class file.
+     * @param offset absolute offset of the first byte after the tag.
+     * @return constant pool info.
+     * @throws IllegalArgumentException if the tag is unknown.
+     */
+    public static ConstantPoolInfo readConstantPoolInfo(byte tag, ByteBuffer buffer, int offset) {
+        return readConstantPoolInfo(tag, buffer, offset, null);
+    }
+
+    /**
+     * Read constant pool info with absolute reads from the big-endian buffer.
+     * @param tag constant tag.
+     * @param buffer buffer with the class file.
+     * @param offset absolute offset of the first byte after the tag.
+     * @param symbolTable table of shared UTF8 strings, may be <code>null</code>.
+     * @return constant pool info.
+     * @throws IllegalArgumentException if the tag is unknown.
+     */
+    public static ConstantPoolInfo readConstantPoolInfo(byte tag, ByteBuffer buffer, int offset,
+                                                        SymbolTable symbolTable) {
+        switch (tag) {
+            case CONSTANT_STRING:
+                return new ConstantString(buffer.getShort(offset) & 0xFFFF);
+            case CONSTANT_INT:
+                return new ConstantPrimitive<Integer>(tag, buffer.getInt(offset));
+            case CONSTANT_FLOAT:
+                return new ConstantPrimitive<Float>(tag, buffer.getFloat(offset));
+            case CONSTANT_LONG:
+                return new ConstantPrimitive<Long>(tag, buffer.getLong(offset));
+            case CONSTANT_DOUBLE:
+                return new ConstantPrimitive<Double>(tag, buffer.getDouble(offset));
+            case CONSTANT_UTF8: {
+                int length = buffer.getShort(offset) & 0xFFFF;
+                String stringVal = symbolTable != null
+                        ? symbolTable.intern(buffer, offset + 2, length)
+                        : ModifiedUtf8.decode(buffer, offset + 2, length);
+                return new ConstantPrimitive<String>(tag, stringVal);
+            }
+            case CONSTANT_NAME_AND_TYPE:
+                return new ConstantNameAndType(buffer.getShort(offset) & 0xFFFF,
+                        buffer.getShort(offset + 2) & 0xFFFF);
+            case CONSTANT_CLASS_INFO:
+                return new ConstantClassInfo(buffer.getShort(offset) & 0xFFFF);
+            case CONSTANT_FIELD_REF:
+            case CONSTANT_METHOD_REF:
+            case CONSTANT_INTERFACE_METHOD_REF:
+                return new ConstantReference(tag,
+                        buffer.getShort(offset) & 0xFFFF,
+                        buffer.getShort(offset + 2) & 0xFFFF);
+            case CONSTANT_METHOD_HANDLE:
+                return new ConstantMethodHandle(buffer.get(offset) & 0xFF,
+                        buffer.getShort(offset + 1) & 0xFFFF);
+            case CONSTANT_METHOD_TYPE:
+                return new ConstantMethodType(buffer.getShort(offset) & 0xFFFF);
+            case CONSTANT_DYNAMIC:
+            case CONSTANT_INVOKE_DYNAMIC:
+                return new ConstantDynamic(tag,
+                        buffer.getShort(offset) & 0xFFFF,
+                        buffer.getShort(offset + 2) & 0xFFFF);
+            case CONSTANT_MODULE:
+                return new ConstantModule(buffer.getShort(offset) & 0xFFFF);
+            case CONSTANT_PACKAGE:
+                return new ConstantPackage(buffer.getShort(offset) & 0xFFFF);
+            default:
+                throw new IllegalArgumentException("Unknown constant type tag: " + tag);
+        }
+    }
+
+    /**
+     * Get length of the constant pool info in bytes (the tag is not included).
+     * @param tag constant tag.
+     * @param buffer buffer with the class file.
+     * @param offset absolute offset of the first byte after the tag.
+     * @return length in bytes.
+     * @throws IllegalArgumentException if the tag is unknown.
+     */
+    public static int getConstantPoolInfoLength(byte tag, ByteBuffer buffer, int offset) {
+        switch (tag) {
+            case CONSTANT_UTF8:
+                return 2 + (buffer.getShort(offset) & 0xFFFF);
+            case CONSTANT_CLASS_INFO:
+            case CONSTANT_STRING:
+            case CONSTANT_METHOD_TYPE:
+            case CONSTANT_MODULE:
+            case CONSTANT_PACKAGE:
+                return 2;
+            case CONSTANT_METHOD_HANDLE:
+                return 3;
+            case CONSTANT_INT:
+            case CONSTANT_FLOAT:
+            case CONSTANT_NAME_AND_TYPE:
+            case CONSTANT_FIELD_REF:
+            case CONSTANT_METHOD_REF:
+            case CONSTANT_INTERFACE_METHOD_REF:
+            case CONSTANT_DYNAMIC:
+            case CONSTANT_INVOKE_DYNAMIC:
+                return 4;
+            case CONSTANT_LONG:
+            case CONSTANT_DOUBLE:
+                return 8;
             default:
-                logger.warning("Unknown constant type tag: " + tag);
+                throw new IllegalArgumentException("Unknown constant type tag: " + tag);
         }
-        return null;
     }
 
     ConstantPoolInfo(byte tag) {
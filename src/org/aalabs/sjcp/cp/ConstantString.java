@@ -34,7 +34,7 @@ public class ConstantString extends ConstantPoolInfo {
     private final int stringIndex;
 
     ConstantString(int stringIndex) {
-        super(CONSTANT_CLASS_INFO);
+        super(CONSTANT_STRING);
         this.stringIndex = stringIndex;
     }
 
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.cp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receiver of the constant pool entries while the pool is being read.
+ * @author Andrew Porokhin
+ * @see PackedConstantPool#load(ByteBuffer, int, int, SymbolTable, ConstantVisitor)
+ */
+public abstract class ConstantVisitor {
+    /**
+     * Called for every constant pool entry in the class file order, before the entry is stored.
+     * Entries can be decoded with
+     * {@link ConstantPoolInfo#readConstantPoolInfo(byte, ByteBuffer, int)}.
+     * @param tag constant tag.
+     * @param index constant pool index.
+     * @param buffer big-endian buffer with the class file.
+     * @param offset absolute offset of the first byte after the tag.
+     * @return <code>false</code> to stop reading.
+     */
+    public boolean visitConstant(byte tag, int index, ByteBuffer buffer, int offset) {
+        return true;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.cp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Constant pool that decodes entries on demand.
+ * <p>
+ * Single pass over the constant pool records byte offset of every entry, the
+ * {@link ConstantPoolInfo} objects are created only when {@link #getConstantPoolInfo(int)} is called. Entries
+ * are not cached, so every call decodes the entry again. The pool keeps a reference to the
+ * buffer, the buffer content must not be changed while the pool is in use.
+ * @author Andrew Porokhin
+ */
+public class LazyConstantPool extends ConstantPool {
+    private final ByteBuffer buffer;
+    /** Absolute offsets of the entry tags, 0 for unusable slots. */
+    private final int[] offsets;
+    private final int endOffset;
+    private final SymbolTable symbolTable;
+
+    private LazyConstantPool(ByteBuffer buffer, int[] offsets, int endOffset, SymbolTable symbolTable) {
+        this.buffer = buffer;
+        this.offsets = offsets;
+        this.endOffset = endOffset;
+        this.symbolTable = symbolTable;
+    }
+
+    /**
+     * Index the constant pool.
+     * @param buffer big-endian buffer with the class file.
+     * @param offset absolute offset of the first constant pool entry.
+     * @param constantPoolCount <code>constant_pool_count</code> value from the class file.
+     * @return indexed constant pool.
+     * @throws IllegalArgumentException if the constant pool contains unknown tag.
+     */
+    public static LazyConstantPool index(ByteBuffer buffer, int offset, int constantPoolCount) {
+        return index(buffer, offset, constantPoolCount, null);
+    }
+
+    /**
+     * Index the constant pool.
+     * @param buffer big-endian buffer with the class file.
+     * @param offset absolute offset of the first constant pool entry.
+     * @param constantPoolCount <code>constant_pool_count</code> value from the class file.
+     * @param symbolTable table used to decode UTF8 entries, may be <code>null</code>.
+     * @return indexed constant pool.
+     * @throws IllegalArgumentException if the constant pool contains unknown tag.
+     */
+    public static LazyConstantPool index(ByteBuffer buffer, int offset, int constantPoolCount,
+                                         SymbolTable symbolTable) {
+        int size = constantPoolCount > 0 ? constantPoolCount - 1 : 0;
+        int[] offsets = new int[size];
+        int i = 0;
+        while (i < size) {
+            byte tag = buffer.get(offset);
+            offsets[i++] = offset;
+            offset += 1 + ConstantPoolInfo.getConstantPoolInfoLength(tag, buffer, offset + 1);
+
+            // 8-byte constants take up two entries.
+            if (tag == ConstantPoolInfo.CONSTANT_DOUBLE || tag == ConstantPoolInfo.CONSTANT_LONG) {
+                i++;
+            }
+        }
+        return new LazyConstantPool(buffer, offsets, offset, symbolTable);
+    }
+
+    /**
+     * Get absolute offset of the first byte after the constant pool.
+     * @return offset in the buffer.
+     */
+    public int getEndOffset() {
+        return endOffset;
+    }
+
+    @Override
+    public byte getTag(int index) {
+        int offset = offsets[index - 1];
+        return offset != 0 ? buffer.get(offset) : 0;
+    }
+
+    @Override
+    public Utf8 getUtf8(int index) {
+        int offset = offsets[index - 1];
+        if (offset == 0 || buffer.get(offset) != ConstantPoolInfo.CONSTANT_UTF8) {
+            return null;
+        }
+        return new Utf8(buffer, offset + 3, buffer.getShort(offset + 1) & 0xFFFF);
+    }
+
+    @Override
+    public int getClassNameIndex(int index) {
+        return u2(check(index, ConstantPoolInfo.CONSTANT_CLASS_INFO) + 1);
+    }
+
+    @Override
+    public int getRefClassIndex(int index) {
+        return u2(checkRef(index) + 1);
+    }
+
+    @Override
+    public int getRefNameAndTypeIndex(int index) {
+        return u2(checkRef(index) + 3);
+    }
+
+    @Override
+    public int getNameAndTypeNameIndex(int index) {
+        return u2(check(index, ConstantPoolInfo.CONSTANT_NAME_AND_TYPE) + 1);
+    }
+
+    @Override
+    public int getNameAndTypeDescriptorIndex(int index) {
+        return u2(check(index, ConstantPoolInfo.CONSTANT_NAME_AND_TYPE) + 3);
+    }
+
+    @Override
+    public int getDynamicNameAndTypeIndex(int index) {
+        int offset = offsets[index - 1];
+        byte tag = offset != 0 ? buffer.get(offset) : 0;
+        if (tag != ConstantPoolInfo.CONSTANT_DYNAMIC && tag != ConstantPoolInfo.CONSTANT_INVOKE_DYNAMIC) {
+            throw new IllegalArgumentException("Constant #" + index + " is not dynamic, tag " + tag);
+        }
+        return u2(offset + 3);
+    }
+
+    @Override
+    public ConstantPoolInfo getConstantPoolInfo(int index) {
+        int offset = offsets[index - 1];
+        if (offset == 0) {
+            return null;
+        }
+        return ConstantPoolInfo.readConstantPoolInfo(buffer.get(offset), buffer, offset + 1, symbolTable);
+    }
+
+    @Override
+    public int getCount() {
+        return offsets.length + 1;
+    }
+
+    /**
+     * @return offset of the entry tag.
+     */
+    private int check(int index, byte tag) {
+        int offset = offsets[index - 1];
+        byte actual = offset != 0 ? buffer.get(offset) : 0;
+        if (actual != tag) {
+            throw new IllegalArgumentException("Constant #" + index + " has tag " + actual + ", not " + tag);
+        }
+        return offset;
+    }
+
+    private int checkRef(int index) {
+        int offset = offsets[index - 1];
+        byte tag = offset != 0 ? buffer.get(offset) : 0;
+        if (tag != ConstantPoolInfo.CONSTANT_FIELD_REF && tag != ConstantPoolInfo.CONSTANT_METHOD_REF
+                && tag != ConstantPoolInfo.CONSTANT_INTERFACE_METHOD_REF) {
+            throw new IllegalArgumentException("Constant #" + index + " is not a reference, tag " + tag);
+        }
+        return offset;
+    }
+
+    private int u2(int offset) {
+        return buffer.getShort(offset) & 0xFFFF;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.cp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decoder of the modified UTF-8 strings stored in the class file.
+ * Works with absolute reads, so the buffer position is never touched.
+ * @author Andrew Porokhin
+ */
+public final class ModifiedUtf8 {
+    private ModifiedUtf8() {
+    }
+
+    /**
+     * Decode modified UTF-8 bytes (same format as {@link java.io.DataInput#readUTF()} without
+     * the length prefix).
+     * @param buffer buffer with the encoded bytes.
+     * @param offset absolute offset of the first byte.
+     * @param length number of bytes to decode.
+     * @return decoded String.
+     * @throws IllegalArgumentException if the bytes are malformed.
+     */
+    public static String decode(ByteBuffer buffer, int offset, int length) {
+        char[] chars = new char[length];
+        int count = 0;
+        int end = offset + length;
+        int i = offset;
+
+        // Fast path for plain ASCII, the most common case for class and member names.
+        while (i < end) {
+            int c = buffer.get(i) & 0xFF;
+            if (c > 0x7F) {
+                break;
+            }
+            chars[count++] = (char) c;
+            i++;
+        }
+
+        while (i < end) {
+            int c = buffer.get(i) & 0xFF;
+            switch (c >> 4) {
+                case 0: case 1: case 2: case 3: case 4: case 5: case 6: case 7:
+                    // 0xxxxxxx
+                    chars[count++] = (char) c;
+                    i++;
+                    break;
+                case 12: case 13: {
+                    // 110x xxxx 10xx xxxx
+                    if (i + 2 > end) {
+                        throw new IllegalArgumentException("Malformed input: partial character at end");
+                    }
+                    int c2 = buffer.get(i + 1);
+                    if ((c2 & 0xC0) != 0x80) {
+                        throw new IllegalArgumentException("Malformed input around byte " + (i - offset));
+                    }
+                    chars[count++] = (char) (((c & 0x1F) << 6) | (c2 & 0x3F));
+                    i += 2;
+                    break;
+                }
+                case 14: {
+                    // 1110 xxxx 10xx xxxx 10xx xxxx
+                    if (i + 3 > end) {
+                        throw new IllegalArgumentException("Malformed input: partial character at end");
+                    }
+                    int c2 = buffer.get(i + 1);
+                    int c3 = buffer.get(i + 2);
+                    if (((c2 & 0xC0) != 0x80) || ((c3 & 0xC0) != 0x80)) {
+                        throw new IllegalArgumentException("Malformed input around byte " + (i - offset));
+                    }
+                    chars[count++] = (char) (((c & 0x0F) << 12) | ((c2 & 0x3F) << 6) | (c3 & 0x3F));
+                    i += 3;
+                    break;
+                }
+                default:
+                    // 10xx xxxx, 1111 xxxx
+                    throw new IllegalArgumentException("Malformed input around byte " + (i - offset));
+            }
+        }
+        return new String(chars, 0, count);
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.cp;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Constant pool stored in primitive arrays.
+ * <p>
+ * Reading the pool creates at most three arrays: tags, an <code>int</code> value of every entry and
+ * the bits of long and double constants. The <code>int</code> value holds the two u2 indices
+ * of the reference entries (first index in the high half), the single index of the class,
+ * string, method type, module and package entries, the bits of int and float constants and
+ * the tag offset of UTF8 entries. Typed accessors read the arrays directly;
+ * {@link ConstantPoolInfo} objects and decoded strings are created only when requested and
+ * cached without locking, so concurrent readers may decode an entry twice. The pool keeps a
+ * reference to the buffer for UTF8 entries.
+ * @author Andrew Porokhin
+ */
+public class PackedConstantPool extends ConstantPool {
+    /** Arrays of the empty pool, never written. */
+    private static final byte[] NO_TAGS = new byte[1];
+    private static final int[] NO_VALUES = new int[1];
+
+    private ByteBuffer buffer;
+    private SymbolTable symbolTable;
+    private byte[] tags;
+    private int[] values;
+    private long[] longs;
+    private int count;
+    private int endOffset;
+    private ConstantPoolInfo[] entries;
+    private String[] strings;
+
+    /**
+     * Create empty pool to be filled with {@link #load(ByteBuffer, int, int, SymbolTable)}.
+     * The same pool may be loaded many times, its arrays are reused and grow as needed.
+     */
+    public PackedConstantPool() {
+        tags = NO_TAGS;
+        values = NO_VALUES;
+        count = 1;
+    }
+
+    /**
+     * Read the constant pool.
+     * @param buffer big-endian buffer with the class file.
+     * @param offset absolute offset of the first constant pool entry.
+     * @param constantPoolCount <code>constant_pool_count</code> value from the class file.
+     * @param symbolTable table used to decode UTF8 entries, may be <code>null</code>.
+     * @return constant pool.
+     * @throws IllegalArgumentException if the constant pool contains unknown tag.
+     */
+    public static PackedConstantPool read(ByteBuffer buffer, int offset, int constantPoolCount,
+                                          SymbolTable symbolTable) {
+        PackedConstantPool pool = new PackedConstantPool();
+        pool.load(buffer, offset, constantPoolCount, symbolTable);
+        return pool;
+    }
+
+    /**
+     * Read the constant pool into this pool, replacing the previous content. Entries and
+     * strings returned before stay valid, but they are no longer cached.
+     * @param buffer big-endian buffer with the class file.
+     * @param offset absolute offset of the first constant pool entry.
+     * @param constantPoolCount <code>constant_pool_count</code> value from the class file.
+     * @param symbolTable table used to decode UTF8 entries, may be <code>null</code>.
+     * @return absolute offset of the first byte after the constant pool.
+     * @throws IllegalArgumentException if the constant pool contains unknown tag.
+     */
+    public int load(ByteBuffer buffer, int offset, int constantPoolCount, SymbolTable symbolTable) {
+        return load(buffer, offset, constantPoolCount, symbolTable, null);
+    }
+
+    /**
+     * Read the constant pool into this pool, reporting every entry to the visitor.
+     * If the visitor stops reading the pool is left empty.
+     * @param buffer big-endian buffer with the class file.
+     * @param offset absolute offset of the first constant pool entry.
+     * @param constantPoolCount <code>constant_pool_count</code> value from the class file.
+     * @param symbolTable table used to decode UTF8 entries, may be <code>null</code>.
+     * @param visitor receiver of the entries, may be <code>null</code>.
+     * @return absolute offset of the first byte after the constant pool or <code>-1</code> if
+     *         the visitor stopped reading.
+     * @throws IllegalArgumentException if the constant pool contains unknown tag.
+     * @see #load(ByteBuffer, int, int, SymbolTable)
+     */
+    public int load(ByteBuffer buffer, int offset, int constantPoolCount, SymbolTable symbolTable,
+                    ConstantVisitor visitor) {
+        int newCount = Math.max(constantPoolCount, 1);
+        if (tags.length < newCount) {
+            int capacity = Math.max(newCount, tags.length + (tags.length >> 1));
+            tags = new byte[capacity];
+            values = new int[capacity];
+            entries = null;
+            strings = null;
+        } else {
+            if (entries != null) {
+                Arrays.fill(entries, 0, count, null);
+            }
+            if (strings != null) {
+                Arrays.fill(strings, 0, count, null);
+            }
+        }
+        this.buffer = buffer;
+        this.symbolTable = symbolTable;
+        // Invalid until the whole pool is read.
+        this.count = 1;
+
+        byte[] tags = this.tags;
+        int[] values = this.values;
+        int longCount = 0;
+        int index = 1;
+        while (index < newCount) {
+            byte tag = buffer.get(offset);
+            if (visitor != null && !visitor.visitConstant(tag, index, buffer, offset + 1)) {
+                return -1;
+            }
+            tags[index] = tag;
+            switch (tag) {
+                case ConstantPoolInfo.CONSTANT_UTF8:
+                    values[index] = offset;
+                    offset += 3 + (buffer.getShort(offset + 1) & 0xFFFF);
+                    break;
+                case ConstantPoolInfo.CONSTANT_CLASS_INFO:
+                case ConstantPoolInfo.CONSTANT_STRING:
+                case ConstantPoolInfo.CONSTANT_METHOD_TYPE:
+                case ConstantPoolInfo.CONSTANT_MODULE:
+                case ConstantPoolInfo.CONSTANT_PACKAGE:
+                    values[index] = buffer.getShort(offset + 1) & 0xFFFF;
+                    offset += 3;
+                    break;
+                case ConstantPoolInfo.CONSTANT_METHOD_HANDLE:
+                    values[index] = (buffer.get(offset + 1) & 0xFF) << 16 | (buffer.getShort(offset + 2) & 0xFFFF);
+                    offset += 4;
+                    break;
+                case ConstantPoolInfo.CONSTANT_INT:
+                case ConstantPoolInfo.CONSTANT_FLOAT:
+                case ConstantPoolInfo.CONSTANT_NAME_AND_TYPE:
+                case ConstantPoolInfo.CONSTANT_FIELD_REF:
+                case ConstantPoolInfo.CONSTANT_METHOD_REF:
+                case ConstantPoolInfo.CONSTANT_INTERFACE_METHOD_REF:
+                case ConstantPoolInfo.CONSTANT_DYNAMIC:
+                case ConstantPoolInfo.CONSTANT_INVOKE_DYNAMIC:
+                    values[index] = buffer.getInt(offset + 1);
+                    offset += 5;
+                    break;
+                case ConstantPoolInfo.CONSTANT_LONG:
+                case ConstantPoolInfo.CONSTANT_DOUBLE:
+                    if (longs == null) {
+                        longs = new long[8];
+                    } else if (longCount == longs.length) {
+                        longs = Arrays.copyOf(longs, longCount * 2);
+                    }
+                    values[index] = longCount;
+                    longs[longCount++] = buffer.getLong(offset + 1);
+                    offset += 9;
+                    // According to VM Spec (nightmare... -_-):
+                    // All 8-byte constants take up two entries in the constant_pool
+                    // table of the class file. If a CONSTANT_Long_info or
+                    // CONSTANT_Double_info structure is the item in the constant_pool
+                    // table at index n, then the next usable item in the pool is
+                    // located at index n+2. The constant_pool  index n+1 must be
+                    // valid but is considered unusable.
+                    index++;
+                    if (index < newCount) {
+                        tags[index] = 0;
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown constant type tag: " + tag);
+            }
+            index++;
+        }
+        this.count = newCount;
+        this.endOffset = offset;
+        return offset;
+    }
+
+    /**
+     * Drop the reference to the class file buffer and the cached entries.
+     */
+    public void clear() {
+        buffer = null;
+        symbolTable = null;
+        count = 1;
+        entries = null;
+        strings = null;
+    }
+
+    /**
+     * Get absolute offset of the first byte after the constant pool.
+     * @return offset in the buffer.
+     */
+    public int getEndOffset() {
+        return endOffset;
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public byte getTag(int index) {
+        return tags[checkIndex(index)];
+    }
+
+    public int getInt(int index) {
+        return values[check(index, ConstantPoolInfo.CONSTANT_INT)];
+    }
+
+    public float getFloat(int index) {
+        return Float.intBitsToFloat(values[check(index, ConstantPoolInfo.CONSTANT_FLOAT)]);
+    }
+
+    public long getLong(int index) {
+        return longs[values[check(index, ConstantPoolInfo.CONSTANT_LONG)]];
+    }
+
+    public double getDouble(int index) {
+        return Double.longBitsToDouble(longs[values[check(index, ConstantPoolInfo.CONSTANT_DOUBLE)]]);
+    }
+
+    /**
+     * Get decoded UTF8 entry.
+     * @param index 1-based constant pool index.
+     * @return decoded String.
+     * @throws IllegalArgumentException if the entry is not UTF8.
+     */
+    public String getString(int index) {
+        check(index, ConstantPoolInfo.CONSTANT_UTF8);
+        if (strings == null) {
+            strings = new String[tags.length];
+        }
+        String s = strings[index];
+        if (s == null) {
+            int offset = values[index];
+            int length = buffer.getShort(offset + 1) & 0xFFFF;
+            s = symbolTable != null
+                    ? symbolTable.intern(buffer, offset + 3, length)
+                    : ModifiedUtf8.decode(buffer, offset + 3, length);
+            strings[index] = s;
+        }
+        return s;
+    }
+
+    @Override
+    public int getClassNameIndex(int index) {
+        return values[check(index, ConstantPoolInfo.CONSTANT_CLASS_INFO)];
+    }
+
+    /**
+     * Get UTF8 index of the string entry.
+     * @param index 1-based constant pool index.
+     * @return index of the UTF8 value.
+     */
+    public int getStringIndex(int index) {
+        return values[check(index, ConstantPoolInfo.CONSTANT_STRING)];
+    }
+
+    @Override
+    public int getRefClassIndex(int index) {
+        return values[checkRef(index)] >>> 16;
+    }
+
+    @Override
+    public int getRefNameAndTypeIndex(int index) {
+        return values[checkRef(index)] & 0xFFFF;
+    }
+
+    @Override
+    public int getNameAndTypeNameIndex(int index) {
+        return values[check(index, ConstantPoolInfo.CONSTANT_NAME_AND_TYPE)] >>> 16;
+    }
+
+    @Override
+    public int getNameAndTypeDescriptorIndex(int index) {
+        return values[check(index, ConstantPoolInfo.CONSTANT_NAME_AND_TYPE)] & 0xFFFF;
+    }
+
+    public int getMethodHandleKind(int index) {
+        return values[check(index, ConstantPoolInfo.CONSTANT_METHOD_HANDLE)] >>> 16;
+    }
+
+    public int getMethodHandleReferenceIndex(int index) {
+        return values[check(index, ConstantPoolInfo.CONSTANT_METHOD_HANDLE)] & 0xFFFF;
+    }
+
+    public int getMethodTypeDescriptorIndex(int index) {
+        return values[check(index, ConstantPoolInfo.CONSTANT_METHOD_TYPE)];
+    }
+
+    /**
+     * Get bootstrap method attribute index of the dynamic or invoke dynamic entry.
+     * @param index 1-based constant pool index.
+     * @return index in the <code>BootstrapMethods</code> attribute.
+     */
+    public int getBootstrapMethodIndex(int index) {
+        return values[checkDynamic(index)] >>> 16;
+    }
+
+    @Override
+    public int getDynamicNameAndTypeIndex(int index) {
+        return values[checkDynamic(index)] & 0xFFFF;
+    }
+
+    @Override
+    public Utf8 getUtf8(int index) {
+        if (tags[checkIndex(index)] != ConstantPoolInfo.CONSTANT_UTF8) {
+            return null;
+        }
+        int offset = values[index];
+        return new Utf8(buffer, offset + 3, buffer.getShort(offset + 1) & 0xFFFF);
+    }
+
+    @Override
+    public Utf8 getClassName(int index) {
+        if (index <= 0 || index >= count || tags[index] != ConstantPoolInfo.CONSTANT_CLASS_INFO) {
+            return null;
+        }
+        int nameIndex = values[index];
+        return nameIndex < count ? getUtf8(nameIndex) : null;
+    }
+
+    @Override
+    public ConstantPoolInfo getConstantPoolInfo(int index) {
+        if (tags[checkIndex(index)] == 0) {
+            return null;
+        }
+        if (entries == null) {
+            entries = new ConstantPoolInfo[tags.length];
+        }
+        ConstantPoolInfo cpi = entries[index];
+        if (cpi == null) {
+            cpi = create(index);
+            entries[index] = cpi;
+        }
+        return cpi;
+    }
+
+    private ConstantPoolInfo create(int index) {
+        byte tag = tags[index];
+        int value = values[index];
+        switch (tag) {
+            case ConstantPoolInfo.CONSTANT_UTF8:
+                return new ConstantPrimitive<String>(tag, getString(index));
+            case ConstantPoolInfo.CONSTANT_INT:
+                return new ConstantPrimitive<Integer>(tag, value);
+            case ConstantPoolInfo.CONSTANT_FLOAT:
+                return new ConstantPrimitive<Float>(tag, Float.intBitsToFloat(value));
+            case ConstantPoolInfo.CONSTANT_LONG:
+                return new ConstantPrimitive<Long>(tag, longs[value]);
+            case ConstantPoolInfo.CONSTANT_DOUBLE:
+                return new ConstantPrimitive<Double>(tag, Double.longBitsToDouble(longs[value]));
+            case ConstantPoolInfo.CONSTANT_CLASS_INFO:
+                return new ConstantClassInfo(value);
+            case ConstantPoolInfo.CONSTANT_STRING:
+                return new ConstantString(value);
+            case ConstantPoolInfo.CONSTANT_NAME_AND_TYPE:
+                return new ConstantNameAndType(value >>> 16, value & 0xFFFF);
+            case ConstantPoolInfo.CONSTANT_FIELD_REF:
+            case ConstantPoolInfo.CONSTANT_METHOD_REF:
+            case ConstantPoolInfo.CONSTANT_INTERFACE_METHOD_REF:
+                return new ConstantReference(tag, value >>> 16, value & 0xFFFF);
+            case ConstantPoolInfo.CONSTANT_METHOD_HANDLE:
+                return new ConstantMethodHandle(value >>> 16, value & 0xFFFF);
+            case ConstantPoolInfo.CONSTANT_METHOD_TYPE:
+                return new ConstantMethodType(value);
+            case ConstantPoolInfo.CONSTANT_DYNAMIC:
+            case ConstantPoolInfo.CONSTANT_INVOKE_DYNAMIC:
+                return new ConstantDynamic(tag, value >>> 16, value & 0xFFFF);
+            case ConstantPoolInfo.CONSTANT_MODULE:
+                return new ConstantModule(value);
+            case ConstantPoolInfo.CONSTANT_PACKAGE:
+                return new ConstantPackage(value);
+            default:
+                throw new IllegalStateException("Unexpected tag: " + tag);
+        }
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Constant #" + index + ", count: " + count);
+        }
+        return index;
+    }
+
+    private int check(int index, byte tag) {
+        if (tags[checkIndex(index)] != tag) {
+            throw new IllegalArgumentException("Constant #" + index + " has tag " + tags[index] + ", not " + tag);
+        }
+        return index;
+    }
+
+    private int checkRef(int index) {
+        byte tag = tags[checkIndex(index)];
+        if (tag != ConstantPoolInfo.CONSTANT_FIELD_REF && tag != ConstantPoolInfo.CONSTANT_METHOD_REF
+                && tag != ConstantPoolInfo.CONSTANT_INTERFACE_METHOD_REF) {
+            throw new IllegalArgumentException("Constant #" + index + " is not a reference, tag " + tag);
+        }
+        return index;
+    }
+
+    private int checkDynamic(int index) {
+        byte tag = tags[checkIndex(index)];
+        if (tag != ConstantPoolInfo.CONSTANT_DYNAMIC && tag != ConstantPoolInfo.CONSTANT_INVOKE_DYNAMIC) {
+            throw new IllegalArgumentException("Constant #" + index + " is not dynamic, tag " + tag);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.cp;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+
+/**
+ * Table of decoded UTF8 constants that can be shared between parsed classes.
+ * <p>
+ * The table is keyed by the raw modified UTF-8 bytes: the reader looks the bytes up before
+ * decoding a UTF8 entry, so a repeated name (<code>java/lang/Object</code>, <code>Code</code>,
+ * <code>()V</code>) is decoded and held in memory only once. Strings are weakly referenced and
+ * are dropped from the table when no parsed class uses them anymore.
+ * <p>
+ * The table is thread-safe, it is split into independently locked segments.
+ * @author Andrew Porokhin
+ */
+public class SymbolTable {
+    private static final int SEGMENT_COUNT = 32;
+
+    private final Segment[] segments;
+
+    public SymbolTable() {
+        segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Get decoded string for the modified UTF-8 bytes.
+     * @param buffer buffer with the encoded bytes.
+     * @param offset absolute offset of the first byte.
+     * @param length number of bytes.
+     * @return shared decoded String.
+     * @throws IllegalArgumentException if the bytes are malformed.
+     */
+    public String intern(ByteBuffer buffer, int offset, int length) {
+        int hash = hash(buffer, offset, length);
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENT_COUNT - 1)].intern(hash, buffer, offset, length);
+    }
+
+    /**
+     * Get number of the symbols in the table.
+     * @return number of symbols.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private static int hash(ByteBuffer buffer, int offset, int length) {
+        int hash = length;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        return hash;
+    }
+
+    private static final class Entry extends WeakReference<String> {
+        final int hash;
+        final byte[] bytes;
+        Entry next;
+
+        Entry(String value, ReferenceQueue<String> queue, int hash, byte[] bytes, Entry next) {
+            super(value, queue);
+            this.hash = hash;
+            this.bytes = bytes;
+            this.next = next;
+        }
+
+        boolean matches(int hash, ByteBuffer buffer, int offset, int length) {
+            if (this.hash != hash || bytes.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != buffer.get(offset + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Segment {
+        private final ReferenceQueue<String> queue = new ReferenceQueue<String>();
+        private Entry[] table = new Entry[64];
+        private int count;
+
+        synchronized String intern(int hash, ByteBuffer buffer, int offset, int length) {
+            purge();
+            int index = (hash & 0x7FFFFFFF) % table.length;
+            for (Entry e = table[index]; e != null; e = e.next) {
+                if (e.matches(hash, buffer, offset, length)) {
+                    String value = e.get();
+                    if (value != null) {
+                        return value;
+                    }
+                }
+            }
+
+            String value = ModifiedUtf8.decode(buffer, offset, length);
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(offset + i);
+            }
+            if (count >= table.length * 3 / 4) {
+                resize();
+                index = (hash & 0x7FFFFFFF) % table.length;
+            }
+            table[index] = new Entry(value, queue, hash, bytes, table[index]);
+            count++;
+            return value;
+        }
+
+        synchronized int size() {
+            purge();
+            return count;
+        }
+
+        private void resize() {
+            Entry[] newTable = new Entry[table.length * 2];
+            for (Entry head : table) {
+                Entry e = head;
+                while (e != null) {
+                    Entry next = e.next;
+                    int index = (e.hash & 0x7FFFFFFF) % newTable.length;
+                    e.next = newTable[index];
+                    newTable[index] = e;
+                    e = next;
+                }
+            }
+            table = newTable;
+        }
+
+        /** Remove entries with collected strings. */
+        private void purge() {
+            Entry cleared;
+            while ((cleared = (Entry) queue.poll()) != null) {
+                int index = (cleared.hash & 0x7FFFFFFF) % table.length;
+                Entry prev = null;
+                for (Entry e = table[index]; e != null; prev = e, e = e.next) {
+                    if (e == cleared) {
+                        if (prev == null) {
+                            table[index] = e.next;
+                        } else {
+                            prev.next = e.next;
+                        }
+                        count--;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+}
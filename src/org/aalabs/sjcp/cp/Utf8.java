@@ -0,0 +1,195 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.cp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * View of the modified UTF-8 string stored in the class file.
+ * <p>
+ * The view doesn't copy or decode the bytes: comparisons and hashing work directly on the
+ * encoded bytes, the String is created only by {@link #toString()}. Two views are equal if
+ * their bytes are equal, {@link #hashCode()} is the same as the hash code of the decoded String.
+ * @author Andrew Porokhin
+ */
+public final class Utf8 {
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    /**
+     * Create view.
+     * @param buffer buffer with the encoded bytes.
+     * @param offset absolute offset of the first byte.
+     * @param length number of bytes.
+     */
+    public Utf8(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Get number of the encoded bytes.
+     * @return length in bytes.
+     */
+    public int getByteLength() {
+        return length;
+    }
+
+    /**
+     * Get encoded byte.
+     * @param index byte index, from 0 to {@link #getByteLength()} - 1.
+     * @return byte value.
+     */
+    public byte byteAt(int index) {
+        return buffer.get(offset + index);
+    }
+
+    /**
+     * Get view of the part of the bytes.
+     * @param start index of the first byte.
+     * @param end index after the last byte.
+     * @return view of the bytes from <code>start</code> to <code>end</code>.
+     */
+    public Utf8 slice(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        return new Utf8(buffer, offset + start, end - start);
+    }
+
+    /**
+     * Compare decoded characters with the char sequence without decoding the String.
+     * @param s char sequence.
+     * @return <code>true</code> if the string has the same characters.
+     */
+    public boolean contentEquals(CharSequence s) {
+        return compare(s, false);
+    }
+
+    /**
+     * Test if the string starts with the prefix without decoding the String.
+     * @param prefix prefix.
+     * @return <code>true</code> if the string starts with the prefix.
+     */
+    public boolean startsWith(CharSequence prefix) {
+        return compare(prefix, true);
+    }
+
+    /**
+     * Test if the string starts with the encoded bytes of the other view.
+     * @param prefix prefix.
+     * @return <code>true</code> if the string starts with the prefix.
+     */
+    public boolean startsWith(Utf8 prefix) {
+        if (prefix.length > length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (byteAt(i) != prefix.byteAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean compare(CharSequence s, boolean prefix) {
+        int count = s.length();
+        int n = 0;
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
+            if (n == count) {
+                return prefix;
+            }
+            int c = buffer.get(i) & 0xFF;
+            char ch;
+            if (c < 0x80) {
+                ch = (char) c;
+                i++;
+            } else if ((c & 0xE0) == 0xC0 && i + 1 < end) {
+                ch = (char) (((c & 0x1F) << 6) | (buffer.get(i + 1) & 0x3F));
+                i += 2;
+            } else if ((c & 0xF0) == 0xE0 && i + 2 < end) {
+                ch = (char) (((c & 0x0F) << 12) | ((buffer.get(i + 1) & 0x3F) << 6) | (buffer.get(i + 2) & 0x3F));
+                i += 3;
+            } else {
+                // Malformed input never equals to a valid char sequence.
+                return false;
+            }
+            if (s.charAt(n++) != ch) {
+                return false;
+            }
+        }
+        return n == count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Utf8)) {
+            return false;
+        }
+        Utf8 other = (Utf8) o;
+        return other.length == length && startsWith(other);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
+            int c = buffer.get(i) & 0xFF;
+            if (c < 0x80) {
+                i++;
+            } else if ((c & 0xE0) == 0xC0 && i + 1 < end) {
+                c = ((c & 0x1F) << 6) | (buffer.get(i + 1) & 0x3F);
+                i += 2;
+            } else if ((c & 0xF0) == 0xE0 && i + 2 < end) {
+                c = ((c & 0x0F) << 12) | ((buffer.get(i + 1) & 0x3F) << 6) | (buffer.get(i + 2) & 0x3F);
+                i += 3;
+            } else {
+                i++;
+            }
+            hash = 31 * hash + c;
+        }
+        return hash;
+    }
+
+    /**
+     * Decode the string.
+     * @return decoded String.
+     */
+    @Override
+    public String toString() {
+        return ModifiedUtf8.decode(buffer, offset, length);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.index;
+
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receiver of the class changes found by the {@link ClassDirectoryWatcher}.
+ * Methods are called from the watcher thread, one change at a time.
+ * @author Andrew Porokhin
+ */
+public abstract class ClassChangeListener {
+    private static final Logger logger = Logger.getLogger(ClassChangeListener.class.getName());
+
+    /**
+     * Called when the new class file appears.
+     * @param file class file.
+     * @param summary added class.
+     */
+    public abstract void classAdded(Path file, ClassSummary summary);
+
+    /**
+     * Called when the class file is deleted or now contains another class.
+     * @param file class file.
+     * @param summary removed class.
+     */
+    public abstract void classRemoved(Path file, ClassSummary summary);
+
+    /**
+     * Called when the super class or the interfaces of the class change.
+     * Changes which don't touch the hierarchy are not reported.
+     * @param file class file.
+     * @param previous previous state of the class.
+     * @param current current state of the class.
+     */
+    public abstract void superChanged(Path file, ClassSummary previous, ClassSummary current);
+
+    /**
+     * Called when the changed class file can't be read or parsed, the previous state of the
+     * class is kept. Default implementation logs the failure.
+     * @param file class file.
+     * @param cause failure cause.
+     */
+    public void classFailed(Path file, Exception cause) {
+        logger.log(Level.WARNING, "Can't parse " + file, cause);
+    }
+}
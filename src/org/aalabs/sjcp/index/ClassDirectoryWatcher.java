@@ -0,0 +1,340 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.index;
+
+import org.aalabs.sjcp.JavaClassReader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watcher of the class directories which keeps the summaries of the classes up to date.
+ * <p>
+ * {@link #start()} reads all class files once, reporting every class as added, and then only
+ * the class files touched by the file system events are read again. Listeners get the delta:
+ * added and removed classes and classes with changed super types, so the indexes built on
+ * top of the watcher are updated in time proportional to the number of changes.
+ * <p>
+ * Events are collected until the directories are quiet for the settle delay, so a class file
+ * written in several steps by the compiler is read once. Exceptions thrown by the listeners
+ * are logged and don't stop the watcher.
+ * @author Andrew Porokhin
+ */
+public class ClassDirectoryWatcher implements Closeable {
+    private static final Logger logger = Logger.getLogger(ClassDirectoryWatcher.class.getName());
+
+    private static final String CLASS_SUFFIX = ".class";
+    private static final long DEFAULT_SETTLE_MILLIS = 50;
+
+    private final List<Path> roots = new ArrayList<Path>();
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> keys = new HashMap<WatchKey, Path>();
+    private final Map<Path, ClassSummary> classes = new ConcurrentHashMap<Path, ClassSummary>();
+    private final List<ClassChangeListener> listeners = new CopyOnWriteArrayList<ClassChangeListener>();
+    private long settleMillis = DEFAULT_SETTLE_MILLIS;
+    private Thread thread;
+
+    /**
+     * Create watcher.
+     * @param directories class directories to watch.
+     * @throws IOException if the watch service can't be created.
+     */
+    public ClassDirectoryWatcher(Collection<File> directories) throws IOException {
+        for (File directory : directories) {
+            roots.add(directory.toPath().toAbsolutePath().normalize());
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    public void addListener(ClassChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ClassChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    public long getSettleMillis() {
+        return settleMillis;
+    }
+
+    /**
+     * Set time the directories should be quiet before the collected events are processed.
+     * @param settleMillis settle delay in milliseconds.
+     */
+    public void setSettleMillis(long settleMillis) {
+        this.settleMillis = settleMillis;
+    }
+
+    /**
+     * Get current state of the watched classes.
+     * @return unmodifiable map of class file to the class summary.
+     */
+    public Map<Path, ClassSummary> getClasses() {
+        return Collections.unmodifiableMap(classes);
+    }
+
+    /**
+     * Register directories, read all classes and start the watcher thread.
+     * @throws IOException if the directories can't be read.
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            throw new IllegalStateException("Watcher is already started");
+        }
+        Set<Path> files = new LinkedHashSet<Path>();
+        for (Path root : roots) {
+            register(root, files);
+        }
+        for (Path file : files) {
+            update(file);
+        }
+
+        thread = new Thread("ClassDirectoryWatcher") {
+            @Override
+            public void run() {
+                try {
+                    processEvents();
+                } catch (ClosedWatchServiceException ex) {
+                    // Closed.
+                } catch (InterruptedException ex) {
+                    // Stopped.
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop watching.
+     * @throws IOException if the watch service can't be closed.
+     */
+    public synchronized void close() throws IOException {
+        watchService.close();
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void processEvents() throws InterruptedException {
+        while (true) {
+            Set<Path> changed = new LinkedHashSet<Path>();
+            boolean overflow = collect(watchService.take(), changed);
+            WatchKey key;
+            while ((key = watchService.poll(settleMillis, TimeUnit.MILLISECONDS)) != null) {
+                overflow |= collect(key, changed);
+            }
+
+            if (overflow) {
+                // Events are lost, compare everything.
+                changed.addAll(classes.keySet());
+                for (Path root : roots) {
+                    registerQuietly(root, changed);
+                }
+            }
+            for (Path path : changed.toArray(new Path[changed.size()])) {
+                if (Files.isDirectory(path)) {
+                    registerQuietly(path, changed);
+                } else if (!Files.exists(path)) {
+                    if (path.getFileName().toString().endsWith(CLASS_SUFFIX) && classes.containsKey(path)) {
+                        // Deleted class file, removed by the update below.
+                        continue;
+                    }
+                    // Deleted directory: remove everything known below it.
+                    for (Path file : classes.keySet()) {
+                        if (file.startsWith(path)) {
+                            changed.add(file);
+                        }
+                    }
+                }
+            }
+            for (Path path : changed) {
+                if (path.getFileName().toString().endsWith(CLASS_SUFFIX) && !Files.isDirectory(path)) {
+                    update(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collect paths of the key events and reset the key.
+     * @return <code>true</code> if events were lost.
+     */
+    private boolean collect(WatchKey key, Set<Path> changed) {
+        boolean overflow = false;
+        Path directory = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+            } else if (directory != null) {
+                changed.add(directory.resolve((Path) event.context()));
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+        return overflow;
+    }
+
+    /**
+     * Register directory tree and collect its class files.
+     */
+    private void register(Path directory, final Set<Path> files) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                keys.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && file.getFileName().toString().endsWith(CLASS_SUFFIX)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                // Deleted while walking, the delete event follows.
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void registerQuietly(Path directory, Set<Path> files) {
+        try {
+            register(directory, files);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Can't watch " + directory, ex);
+        }
+    }
+
+    /**
+     * Read class file again and report the difference.
+     */
+    private void update(Path file) {
+        ClassSummary previous = classes.get(file);
+        ClassSummary current = null;
+        try {
+            // The file is read into the heap: a mapped file truncated by the compiler
+            // would fail on access.
+            byte[] data = Files.readAllBytes(file);
+            current = ClassSummary.of(JavaClassReader.processBuffer(ByteBuffer.wrap(data), true));
+        } catch (NoSuchFileException ex) {
+            // Deleted.
+        } catch (IOException ex) {
+            fireFailed(file, ex);
+            return;
+        } catch (RuntimeException ex) {
+            fireFailed(file, ex);
+            return;
+        }
+
+        if (current == null) {
+            if (previous != null) {
+                classes.remove(file);
+                fireRemoved(file, previous);
+            }
+            return;
+        }
+
+        classes.put(file, current);
+        if (previous == null) {
+            fireAdded(file, current);
+        } else if (!previous.getCanonicalName().equals(current.getCanonicalName())) {
+            fireRemoved(file, previous);
+            fireAdded(file, current);
+        } else if (!Objects.equals(previous.getSuperClassCanonicalName(), current.getSuperClassCanonicalName())
+                || !previous.getInterfaceNames().equals(current.getInterfaceNames())) {
+            fireSuperChanged(file, previous, current);
+        }
+    }
+
+    /*
+     * Every listener call is guarded: a failing listener must neither kill the watcher thread
+     * nor hide the event from the other listeners.
+     */
+
+    private void fireAdded(Path file, ClassSummary current) {
+        for (ClassChangeListener listener : listeners) {
+            try {
+                listener.classAdded(file, current);
+            } catch (RuntimeException ex) {
+                listenerFailed(file, ex);
+            }
+        }
+    }
+
+    private void fireRemoved(Path file, ClassSummary previous) {
+        for (ClassChangeListener listener : listeners) {
+            try {
+                listener.classRemoved(file, previous);
+            } catch (RuntimeException ex) {
+                listenerFailed(file, ex);
+            }
+        }
+    }
+
+    private void fireSuperChanged(Path file, ClassSummary previous, ClassSummary current) {
+        for (ClassChangeListener listener : listeners) {
+            try {
+                listener.superChanged(file, previous, current);
+            } catch (RuntimeException ex) {
+                listenerFailed(file, ex);
+            }
+        }
+    }
+
+    private void fireFailed(Path file, Exception cause) {
+        for (ClassChangeListener listener : listeners) {
+            try {
+                listener.classFailed(file, cause);
+            } catch (RuntimeException ex) {
+                listenerFailed(file, ex);
+            }
+        }
+    }
+
+    private static void listenerFailed(Path file, RuntimeException ex) {
+        logger.log(Level.WARNING, "Class change listener failed on " + file, ex);
+    }
+}
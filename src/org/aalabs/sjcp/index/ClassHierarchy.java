@@ -0,0 +1,495 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.index;
+
+import org.aalabs.sjcp.JavaClassFile;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Type hierarchy of the set of classes.
+ * <p>
+ * Every class name gets an int id (see {@link #getId(String)}), including the names which are
+ * only referenced as super types. Direct super and sub type edges are stored in compressed
+ * sparse row arrays. Subtype queries use interval labels: classes are numbered in the DFS post
+ * order over the subtype edges and every class keeps the merged intervals of the numbers of
+ * all its subtypes, so {@link #isSubtypeOf(int, int)} is a binary search in a few ints.
+ * <p>
+ * The hierarchy is expected to be acyclic, as the JVM requires. The numbering is computed
+ * once when the hierarchy is built and only read by the queries.
+ * @author Andrew Porokhin
+ */
+public class ClassHierarchy {
+    private static final int[] EMPTY = new int[0];
+
+    private final NameTable names;
+    private final boolean[] defined;
+    private final int[] superStart;
+    private final int[] superEdges;
+    private final int[] subStart;
+    private final int[] subEdges;
+    /** Post order number of every class and the reverse mapping. */
+    private final int[] post;
+    private final int[] postToId;
+    /** Intervals of the class with post order number p are labelStart[p] until labelStart[p + 1]. */
+    private final int[] labelStart;
+    private final int[] labelLow;
+    private final int[] labelHigh;
+
+    /**
+     * Builder of the hierarchy. If the same class is added several times only the first
+     * definition is used, as on the class path.
+     */
+    public static final class Builder {
+        private final NameTable names = new NameTable(1024);
+        private boolean[] defined = new boolean[1024];
+        private int[] edgeChild = new int[2048];
+        private int[] edgeParent = new int[2048];
+        private int edgeCount;
+
+        Builder() {
+        }
+
+        /**
+         * Add parsed class. The class must not be parsed in the header-only mode.
+         * @param classFile parsed class.
+         * @return this builder.
+         */
+        public Builder add(JavaClassFile classFile) {
+            return add(classFile.getCanonicalName(), classFile.getSuperClassCanonicalName(),
+                    classFile.getInterfaceNames());
+        }
+
+        /**
+         * Add class summary.
+         * @param summary class summary.
+         * @return this builder.
+         */
+        public Builder add(ClassSummary summary) {
+            return add(summary.getCanonicalName(), summary.getSuperClassCanonicalName(),
+                    summary.getInterfaceNames());
+        }
+
+        /**
+         * Add class.
+         * @param canonicalName class name.
+         * @param superClassCanonicalName super class name, <code>null</code> if there is no super class.
+         * @param interfaceNames names of the directly implemented interfaces.
+         * @return this builder.
+         */
+        public Builder add(String canonicalName, String superClassCanonicalName, List<String> interfaceNames) {
+            int id = names.add(canonicalName);
+            if (id >= defined.length) {
+                defined = Arrays.copyOf(defined, Math.max(defined.length * 2, id + 1));
+            }
+            if (defined[id]) {
+                return this;
+            }
+            defined[id] = true;
+            if (superClassCanonicalName != null) {
+                addEdge(id, names.add(superClassCanonicalName));
+            }
+            for (int i = 0, size = interfaceNames.size(); i < size; i++) {
+                addEdge(id, names.add(interfaceNames.get(i)));
+            }
+            return this;
+        }
+
+        private void addEdge(int child, int parent) {
+            if (edgeCount == edgeChild.length) {
+                edgeChild = Arrays.copyOf(edgeChild, edgeCount * 2);
+                edgeParent = Arrays.copyOf(edgeParent, edgeCount * 2);
+            }
+            edgeChild[edgeCount] = child;
+            edgeParent[edgeCount] = parent;
+            edgeCount++;
+        }
+
+        /**
+         * Build the hierarchy. The builder should not be used afterwards.
+         * @return class hierarchy.
+         */
+        public ClassHierarchy build() {
+            return new ClassHierarchy(this);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Build hierarchy of the classes.
+     * @param summaries class summaries.
+     * @return class hierarchy.
+     */
+    public static ClassHierarchy of(Collection<ClassSummary> summaries) {
+        Builder builder = new Builder();
+        for (ClassSummary summary : summaries) {
+            builder.add(summary);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Build hierarchy of the classes in the index.
+     * @param index class index.
+     * @return class hierarchy.
+     */
+    public static ClassHierarchy of(ClassIndexFile index) {
+        Builder builder = new Builder();
+        for (int i = 0, count = index.getClassCount(); i < count; i++) {
+            builder.add(index.getCanonicalName(i), index.getSuperClassCanonicalName(i),
+                    index.getInterfaceNames(i));
+        }
+        return builder.build();
+    }
+
+    ClassHierarchy(Builder builder) {
+        names = builder.names;
+        int n = names.size();
+        defined = Arrays.copyOf(builder.defined, n);
+
+        int edgeCount = builder.edgeCount;
+        superStart = new int[n + 1];
+        superEdges = new int[edgeCount];
+        subStart = new int[n + 1];
+        subEdges = new int[edgeCount];
+        fillCsr(builder.edgeChild, builder.edgeParent, edgeCount, superStart, superEdges);
+        fillCsr(builder.edgeParent, builder.edgeChild, edgeCount, subStart, subEdges);
+
+        post = new int[n];
+        postToId = new int[n];
+        int[] low = new int[n];
+        numberPostOrder(low);
+
+        labelStart = new int[n + 1];
+        int[][] labels = buildLabels(low);
+        labelLow = labels[0];
+        labelHigh = labels[1];
+    }
+
+    /**
+     * Counting sort of the edges by the source, keeping the order of addition.
+     */
+    private static void fillCsr(int[] from, int[] to, int edgeCount, int[] start, int[] edges) {
+        for (int i = 0; i < edgeCount; i++) {
+            start[from[i] + 1]++;
+        }
+        for (int i = 1; i < start.length; i++) {
+            start[i] += start[i - 1];
+        }
+        int[] next = Arrays.copyOf(start, start.length - 1);
+        for (int i = 0; i < edgeCount; i++) {
+            edges[next[from[i]]++] = to[i];
+        }
+    }
+
+    /**
+     * Iterative DFS over the subtype edges starting from the roots of the hierarchy.
+     * Fills post order numbers and the lowest number in the DFS subtree of every class.
+     */
+    private void numberPostOrder(int[] low) {
+        int n = post.length;
+        boolean[] visited = new boolean[n];
+        int[] stack = new int[n];
+        int[] edge = new int[n];
+        int counter = 0;
+        // Roots first, then anything left in cycles.
+        for (int pass = 0; pass < 2; pass++) {
+            for (int root = 0; root < n; root++) {
+                if (visited[root] || (pass == 0 && superStart[root] != superStart[root + 1])) {
+                    continue;
+                }
+                int depth = 0;
+                stack[0] = root;
+                edge[0] = subStart[root];
+                visited[root] = true;
+                low[root] = counter;
+                while (depth >= 0) {
+                    int v = stack[depth];
+                    if (edge[depth] < subStart[v + 1]) {
+                        int child = subEdges[edge[depth]++];
+                        if (!visited[child]) {
+                            visited[child] = true;
+                            low[child] = counter;
+                            depth++;
+                            stack[depth] = child;
+                            edge[depth] = subStart[child];
+                        }
+                    } else {
+                        post[v] = counter;
+                        postToId[counter] = v;
+                        counter++;
+                        depth--;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge intervals of every class with the intervals of its direct subtypes, processing
+     * the classes in the post order so the subtypes are always labelled first.
+     */
+    private int[][] buildLabels(int[] low) {
+        int n = post.length;
+        int[] lows = new int[Math.max(16, n)];
+        int[] highs = new int[Math.max(16, n)];
+        int size = 0;
+        long[] merge = new long[16];
+
+        for (int p = 0; p < n; p++) {
+            int v = postToId[p];
+            int count = 0;
+            merge[count++] = ((long) low[v] << 32) | p;
+            for (int e = subStart[v]; e < subStart[v + 1]; e++) {
+                int child = subEdges[e];
+                if (post[child] >= p) {
+                    // Back edge of a cycle.
+                    continue;
+                }
+                int from = labelStart[post[child]];
+                int to = labelStart[post[child] + 1];
+                if (count + to - from > merge.length) {
+                    merge = Arrays.copyOf(merge, Math.max(merge.length * 2, count + to - from));
+                }
+                for (int i = from; i < to; i++) {
+                    merge[count++] = ((long) lows[i] << 32) | highs[i];
+                }
+            }
+            Arrays.sort(merge, 0, count);
+
+            if (size + count > lows.length) {
+                int capacity = Math.max(lows.length * 2, size + count);
+                lows = Arrays.copyOf(lows, capacity);
+                highs = Arrays.copyOf(highs, capacity);
+            }
+            // Labels are stored in the post order, right after the labels of the previous class.
+            int start = size;
+            for (int i = 0; i < count; i++) {
+                int l = (int) (merge[i] >>> 32);
+                int h = (int) merge[i];
+                if (size > start && l <= highs[size - 1] + 1) {
+                    highs[size - 1] = Math.max(highs[size - 1], h);
+                } else {
+                    lows[size] = l;
+                    highs[size] = h;
+                    size++;
+                }
+            }
+            labelStart[p + 1] = size;
+        }
+        return new int[][] {Arrays.copyOf(lows, size), Arrays.copyOf(highs, size)};
+    }
+
+    /**
+     * Get number of the classes, including the classes which are only referenced.
+     * @return number of the classes.
+     */
+    public int getClassCount() {
+        return post.length;
+    }
+
+    /**
+     * Get id of the class.
+     * @param canonicalName class name.
+     * @return id of the class or <code>-1</code> if the class is unknown.
+     */
+    public int getId(String canonicalName) {
+        return names.get(canonicalName);
+    }
+
+    public String getName(int id) {
+        return names.getName(id);
+    }
+
+    /**
+     * Check if the class was added to the hierarchy or is only referenced as a super type.
+     * @param id id of the class.
+     * @return <code>true</code> if the class was added.
+     */
+    public boolean isDefined(int id) {
+        return defined[id];
+    }
+
+    /**
+     * Get direct super types: the super class first, then the interfaces.
+     * @param id id of the class.
+     * @return ids of the direct super types.
+     */
+    public int[] getDirectSupertypes(int id) {
+        return Arrays.copyOfRange(superEdges, superStart[id], superStart[id + 1]);
+    }
+
+    /**
+     * Get direct sub types.
+     * @param id id of the class.
+     * @return ids of the direct sub types.
+     */
+    public int[] getDirectSubtypes(int id) {
+        return Arrays.copyOfRange(subEdges, subStart[id], subStart[id + 1]);
+    }
+
+    /**
+     * Check if the class is the same as or a subtype of another class.
+     * @param id id of the class.
+     * @param superId id of the super type.
+     * @return <code>true</code> if the class is assignable to the super type.
+     */
+    public boolean isSubtypeOf(int id, int superId) {
+        int p = post[id];
+        int low = labelStart[post[superId]];
+        int high = labelStart[post[superId] + 1] - 1;
+        // Find the last interval starting at or before p.
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (labelLow[mid] <= p) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high >= labelStart[post[superId]] && p <= labelHigh[high];
+    }
+
+    /**
+     * Check if the class is the same as or a subtype of another class.
+     * @param canonicalName class name.
+     * @param superClassCanonicalName super type name.
+     * @return <code>true</code> if the class is assignable to the super type,
+     *         <code>false</code> if it isn't or any of the classes is unknown.
+     */
+    public boolean isSubtypeOf(String canonicalName, String superClassCanonicalName) {
+        int id = names.get(canonicalName);
+        int superId = names.get(superClassCanonicalName);
+        return id >= 0 && superId >= 0 && isSubtypeOf(id, superId);
+    }
+
+    /**
+     * Get all direct and indirect sub types of the class.
+     * @param id id of the class.
+     * @return ids of the sub types in no particular order.
+     */
+    public int[] allSubclasses(int id) {
+        int p = post[id];
+        int from = labelStart[p];
+        int to = labelStart[p + 1];
+        int count = -1;
+        for (int i = from; i < to; i++) {
+            count += labelHigh[i] - labelLow[i] + 1;
+        }
+        int[] result = new int[count];
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            for (int q = labelLow[i]; q <= labelHigh[i]; q++) {
+                if (q != p) {
+                    result[size++] = postToId[q];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get all direct and indirect sub types of the class.
+     * @param canonicalName class name.
+     * @return names of the sub types in no particular order, empty if the class is unknown.
+     */
+    public List<String> allSubclasses(String canonicalName) {
+        int id = names.get(canonicalName);
+        return id >= 0 ? toNames(allSubclasses(id)) : Collections.<String>emptyList();
+    }
+
+    /**
+     * Get all direct and indirect super types of the class.
+     * @param id id of the class.
+     * @return ids of the super types, nearest first.
+     */
+    public int[] allSupertypes(int id) {
+        int[] result = EMPTY;
+        int size = 0;
+        int head = -1;
+        int v = id;
+        // Breadth-first walk, the result array is the queue. Super type sets are small,
+        // so duplicates are checked by a linear scan instead of a visited set.
+        while (true) {
+            for (int e = superStart[v]; e < superStart[v + 1]; e++) {
+                int parent = superEdges[e];
+                if (parent == id || contains(result, size, parent)) {
+                    continue;
+                }
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, Math.max(8, size * 2));
+                }
+                result[size++] = parent;
+            }
+            if (++head == size) {
+                break;
+            }
+            v = result[head];
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Get all direct and indirect super types of the class.
+     * @param canonicalName class name.
+     * @return names of the super types, nearest first, empty if the class is unknown.
+     */
+    public List<String> allSupertypes(String canonicalName) {
+        int id = names.get(canonicalName);
+        return id >= 0 ? toNames(allSupertypes(id)) : Collections.<String>emptyList();
+    }
+
+    private static boolean contains(int[] values, int size, int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<String> toNames(final int[] ids) {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return names.getName(ids[index]);
+            }
+
+            @Override
+            public int size() {
+                return ids.length;
+            }
+        };
+    }
+}
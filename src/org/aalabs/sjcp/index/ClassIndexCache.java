@@ -0,0 +1,483 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.index;
+
+import org.aalabs.sjcp.JavaClassReader;
+import org.aalabs.sjcp.scan.ArchiveClassReader;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of the class summaries.
+ * <p>
+ * Every source (class file or archive) is keyed by its path, size and modification time.
+ * When size or time differ the source is checked entry by entry: archive entries are compared
+ * by the CRC-32 stored in the archive, class files by the CRC-32 of their content. Only
+ * changed entries are parsed again, so rescans of an unchanged classpath read nothing but
+ * file attributes and the cache file itself.
+ * <p>
+ * The cache is thread-safe, sources are refreshed in parallel by {@link #scan(Collection)}.
+ * @author Andrew Porokhin
+ */
+public class ClassIndexCache {
+    private static final Logger logger = Logger.getLogger(ClassIndexCache.class.getName());
+
+    private static final int MAGIC = 0x534A4343;
+    private static final int FORMAT_VERSION = 1;
+    private static final String CLASS_SUFFIX = ".class";
+    private static final ClassSummary[] NO_SUMMARIES = new ClassSummary[0];
+    /** Minimum sizes of a string, a source and an entry in the file, bound the counts read from it. */
+    private static final int MIN_STRING_BYTES = 2;
+    private static final int MIN_SOURCE_BYTES = 24;
+    private static final int MIN_ENTRY_BYTES = 28;
+
+    /**
+     * Cached state of the single source.
+     */
+    private static final class SourceRecord {
+        final long size;
+        final long lastModified;
+        /** Entry names, empty string for the class file source. */
+        final String[] entryNames;
+        final long[] entryCrcs;
+        final ClassSummary[] summaries;
+        volatile boolean used;
+
+        SourceRecord(long size, long lastModified, String[] entryNames, long[] entryCrcs,
+                     ClassSummary[] summaries) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.entryNames = entryNames;
+            this.entryCrcs = entryCrcs;
+            this.summaries = summaries;
+        }
+    }
+
+    private final Path cacheFile;
+    private final Map<String, SourceRecord> records = new ConcurrentHashMap<String, SourceRecord>();
+    private final AtomicInteger parsedClasses = new AtomicInteger();
+    private final AtomicInteger reusedClasses = new AtomicInteger();
+
+    private ClassIndexCache(Path cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Load cache from the file. Missing, corrupted or incompatible cache file gives empty cache.
+     * @param cacheFile cache file.
+     * @return loaded cache.
+     */
+    public static ClassIndexCache load(Path cacheFile) {
+        ClassIndexCache cache = new ClassIndexCache(cacheFile);
+        if (Files.isRegularFile(cacheFile)) {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        Files.newInputStream(cacheFile), 65536));
+                try {
+                    cache.read(in, Files.size(cacheFile));
+                } finally {
+                    in.close();
+                }
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Can't read class index cache " + cacheFile + ", starting empty", ex);
+                cache.records.clear();
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Get summaries of the classes in the roots, parsing only new and changed entries.
+     * Classes that can't be parsed are logged and skipped, sources removed during the scan
+     * are dropped from the cache.
+     * @param roots class directories, class files, jar, zip or jmod files.
+     * @return class summaries.
+     * @throws IOException if a root can't be read.
+     */
+    public List<ClassSummary> scan(Collection<File> roots) throws IOException {
+        final List<Path> sources = new ArrayList<Path>();
+        for (File root : roots) {
+            if (root.isDirectory()) {
+                Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile() && file.getFileName().toString().endsWith(CLASS_SUFFIX)) {
+                            sources.add(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } else {
+                sources.add(root.toPath());
+            }
+        }
+
+        try {
+            List<ClassSummary[]> results = sources.parallelStream().map(new Function<Path, ClassSummary[]>() {
+                @Override
+                public ClassSummary[] apply(Path source) {
+                    try {
+                        return refresh(source);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            }).collect(Collectors.<ClassSummary[]>toList());
+
+            List<ClassSummary> summaries = new ArrayList<ClassSummary>();
+            for (ClassSummary[] result : results) {
+                Collections.addAll(summaries, result);
+            }
+            return summaries;
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Get summaries of the classes of the single source.
+     * @param source class file or archive.
+     * @return class summaries, empty if the source doesn't exist.
+     * @throws IOException if the source can't be read.
+     */
+    public List<ClassSummary> getSummaries(File source) throws IOException {
+        return Collections.unmodifiableList(Arrays.asList(refresh(source.toPath())));
+    }
+
+    /**
+     * Remove sources that were not requested since the cache was loaded, e.g. deleted jars.
+     */
+    public void prune() {
+        Iterator<SourceRecord> iterator = records.values().iterator();
+        while (iterator.hasNext()) {
+            if (!iterator.next().used) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Write cache to the file it was loaded from.
+     * @throws IOException if the file can't be written.
+     */
+    public void save() throws IOException {
+        Path parent = cacheFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = Files.createTempFile(parent, "sjcp", ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temp), 65536));
+            try {
+                write(out);
+            } finally {
+                out.close();
+            }
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Get number of classes parsed since the cache was loaded.
+     * @return parsed classes count.
+     */
+    public int getParsedClasses() {
+        return parsedClasses.get();
+    }
+
+    /**
+     * Get number of classes taken from the cache since it was loaded.
+     * @return reused classes count.
+     */
+    public int getReusedClasses() {
+        return reusedClasses.get();
+    }
+
+    private ClassSummary[] refresh(Path source) throws IOException {
+        String key = source.toAbsolutePath().normalize().toString();
+        try {
+            return refresh(source, key);
+        } catch (NoSuchFileException ex) {
+            // Removed after the roots were listed.
+            records.remove(key);
+            return NO_SUMMARIES;
+        }
+    }
+
+    private ClassSummary[] refresh(Path source, String key) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class);
+        long size = attrs.size();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+
+        SourceRecord record = records.get(key);
+        if (record != null && record.size == size && record.lastModified == lastModified) {
+            record.used = true;
+            reusedClasses.addAndGet(record.summaries.length);
+            return record.summaries;
+        }
+
+        SourceRecord updated = source.getFileName().toString().endsWith(CLASS_SUFFIX)
+                ? refreshClassFile(source, size, lastModified, record)
+                : refreshArchive(source, size, lastModified, record);
+        updated.used = true;
+        records.put(key, updated);
+        return updated.summaries;
+    }
+
+    private SourceRecord refreshClassFile(Path source, long size, long lastModified, SourceRecord record)
+            throws IOException {
+        // Read into the heap: mapping every loose class file would exhaust the process map count.
+        byte[] data = Files.readAllBytes(source);
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        long crcValue = crc.getValue();
+
+        ClassSummary summary;
+        if (record != null && record.entryCrcs.length == 1 && record.entryCrcs[0] == crcValue) {
+            // Touched but not changed.
+            summary = record.summaries[0];
+            reusedClasses.incrementAndGet();
+        } else {
+            try {
+                summary = ClassSummary.of(JavaClassReader.processBuffer(ByteBuffer.wrap(data), true, null,
+                        source.toString()));
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "Can't parse " + source, ex);
+                return new SourceRecord(size, lastModified, new String[0], new long[0], NO_SUMMARIES);
+            }
+            parsedClasses.incrementAndGet();
+        }
+        return new SourceRecord(size, lastModified, new String[] {""}, new long[] {crcValue},
+                new ClassSummary[] {summary});
+    }
+
+    private SourceRecord refreshArchive(Path source, long size, long lastModified, SourceRecord record)
+            throws IOException {
+        Map<String, Integer> previous = new HashMap<String, Integer>();
+        if (record != null) {
+            for (int i = 0; i < record.entryNames.length; i++) {
+                previous.put(record.entryNames[i], i);
+            }
+        }
+
+        ArchiveClassReader archive = new ArchiveClassReader(source.toFile());
+        try {
+            List<ArchiveClassReader.ClassEntry> entries = archive.getClassEntries();
+            int count = entries.size();
+            String[] names = new String[count];
+            long[] crcs = new long[count];
+            ClassSummary[] summaries = new ClassSummary[count];
+            int parsed = 0;
+            for (ArchiveClassReader.ClassEntry entry : entries) {
+                String name = entry.getZipEntry().getName();
+                long crc = entry.getZipEntry().getCrc();
+                Integer index = previous.get(name);
+                ClassSummary summary;
+                if (index != null && crc != -1 && record.entryCrcs[index] == crc) {
+                    summary = record.summaries[index];
+                    reusedClasses.incrementAndGet();
+                } else {
+                    try {
+                        summary = ClassSummary.of(JavaClassReader.processBuffer(archive.getData(entry), true, null,
+                                archive.getLocation(entry)));
+                    } catch (RuntimeException ex) {
+                        logger.log(Level.WARNING, "Can't parse " + archive.getLocation(entry), ex);
+                        continue;
+                    }
+                    parsedClasses.incrementAndGet();
+                }
+                names[parsed] = name;
+                crcs[parsed] = crc;
+                summaries[parsed] = summary;
+                parsed++;
+            }
+            if (parsed < count) {
+                names = Arrays.copyOf(names, parsed);
+                crcs = Arrays.copyOf(crcs, parsed);
+                summaries = Arrays.copyOf(summaries, parsed);
+            }
+            return new SourceRecord(size, lastModified, names, crcs, summaries);
+        } finally {
+            archive.close();
+        }
+    }
+
+    /*
+     * Cache file format, all strings are stored once in the string table:
+     *   int magic, int version
+     *   int stringCount, stringCount * UTF
+     *   int sourceCount
+     *   per source: int path, long size, long lastModified, int entryCount
+     *     per entry: int name, long crc, int className, int superClassName,
+     *                short major, short minor, short accessFlags,
+     *                short interfaceCount, interfaceCount * int interfaceName
+     * Names that can't be resolved (no super class, malformed class) are stored as -1.
+     */
+
+    private void write(DataOutputStream out) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        for (Map.Entry<String, SourceRecord> e : records.entrySet()) {
+            addString(strings, e.getKey());
+            SourceRecord record = e.getValue();
+            for (int i = 0; i < record.summaries.length; i++) {
+                addString(strings, record.entryNames[i]);
+                ClassSummary summary = record.summaries[i];
+                addString(strings, summary.getCanonicalName());
+                addString(strings, summary.getSuperClassCanonicalName());
+                for (String name : summary.getInterfaceNames()) {
+                    addString(strings, name);
+                }
+            }
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(strings.size());
+        for (String s : strings.keySet()) {
+            out.writeUTF(s);
+        }
+
+        out.writeInt(records.size());
+        for (Map.Entry<String, SourceRecord> e : records.entrySet()) {
+            SourceRecord record = e.getValue();
+            out.writeInt(strings.get(e.getKey()));
+            out.writeLong(record.size);
+            out.writeLong(record.lastModified);
+            out.writeInt(record.summaries.length);
+            for (int i = 0; i < record.summaries.length; i++) {
+                ClassSummary summary = record.summaries[i];
+                out.writeInt(strings.get(record.entryNames[i]));
+                out.writeLong(record.entryCrcs[i]);
+                out.writeInt(stringIndex(strings, summary.getCanonicalName()));
+                out.writeInt(stringIndex(strings, summary.getSuperClassCanonicalName()));
+                out.writeShort(summary.getMajorVersion());
+                out.writeShort(summary.getMinorVersion());
+                out.writeShort(summary.getAccessFlags());
+                List<String> interfaces = summary.getInterfaceNames();
+                out.writeShort(interfaces.size());
+                for (String name : interfaces) {
+                    out.writeInt(stringIndex(strings, name));
+                }
+            }
+        }
+    }
+
+    private static void addString(Map<String, Integer> strings, String s) {
+        if (s != null && !strings.containsKey(s)) {
+            strings.put(s, strings.size());
+        }
+    }
+
+    private static int stringIndex(Map<String, Integer> strings, String s) {
+        return s != null ? strings.get(s) : -1;
+    }
+
+    /**
+     * Read cache file. Every count and string index is checked, so a corrupted file fails
+     * with an exception instead of a runtime error.
+     * @param fileSize size of the cache file, bounds the counts.
+     */
+    private void read(DataInputStream in, long fileSize) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class index cache file");
+        }
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported class index cache version: " + version);
+        }
+
+        String[] strings = new String[readCount(in, fileSize / MIN_STRING_BYTES)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+
+        int sourceCount = readCount(in, fileSize / MIN_SOURCE_BYTES);
+        for (int s = 0; s < sourceCount; s++) {
+            String path = readString(in, strings);
+            if (path == null) {
+                throw new IOException("Corrupted class index cache: source without path");
+            }
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            int count = readCount(in, fileSize / MIN_ENTRY_BYTES);
+            String[] names = new String[count];
+            long[] crcs = new long[count];
+            ClassSummary[] summaries = new ClassSummary[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = readString(in, strings);
+                crcs[i] = in.readLong();
+                String className = readString(in, strings);
+                String superName = readString(in, strings);
+                if (names[i] == null) {
+                    throw new IOException("Corrupted class index cache: entry without name");
+                }
+                int major = in.readUnsignedShort();
+                int minor = in.readUnsignedShort();
+                int accessFlags = in.readUnsignedShort();
+                String[] interfaces = new String[in.readUnsignedShort()];
+                for (int j = 0; j < interfaces.length; j++) {
+                    interfaces[j] = readString(in, strings);
+                }
+                summaries[i] = new ClassSummary(className, superName, interfaces, major, minor, accessFlags);
+            }
+            records.put(path, new SourceRecord(size, lastModified, names, crcs, summaries));
+        }
+    }
+
+    private static int readCount(DataInputStream in, long max) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > max) {
+            throw new IOException("Corrupted class index cache: count " + count);
+        }
+        return count;
+    }
+
+    private static String readString(DataInputStream in, String[] strings) throws IOException {
+        int index = in.readInt();
+        if (index == -1) {
+            return null;
+        }
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("Corrupted class index cache: string #" + index);
+        }
+        return strings[index];
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.index;
+
+import org.aalabs.sjcp.cp.ModifiedUtf8;
+import org.aalabs.sjcp.cp.Utf8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Class index written by {@link ClassIndexWriter}.
+ * <p>
+ * The file is memory-mapped and nothing is read at open time besides the header, all lookups
+ * go directly to the mapped bytes. Classes are addressed by the position in the index,
+ * {@link #indexOf(String)} finds the position of the class by name.
+ * Lookups use only absolute reads of the read-only mapping, so any thread may query the index.
+ * @author Andrew Porokhin
+ */
+public class ClassIndexFile {
+    private final ByteBuffer buffer;
+    private final int classCount;
+    private final int stringCount;
+    private final int nameRefsOffset;
+    private final int superRefsOffset;
+    private final int interfaceStartsOffset;
+    private final int interfaceRefsOffset;
+    private final int accessFlagsOffset;
+    private final int majorVersionsOffset;
+    private final int minorVersionsOffset;
+    private final int stringOffsetsOffset;
+
+    ClassIndexFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < ClassIndexWriter.HEADER_LENGTH || buffer.getInt(0) != ClassIndexWriter.MAGIC) {
+            throw new IOException("Not a class index file");
+        }
+        int version = buffer.getInt(4);
+        if (version != ClassIndexWriter.FORMAT_VERSION) {
+            throw new IOException("Unsupported class index version: " + version);
+        }
+        classCount = buffer.getInt(8);
+        stringCount = buffer.getInt(12);
+        int interfaceRefCount = buffer.getInt(16);
+
+        nameRefsOffset = ClassIndexWriter.HEADER_LENGTH;
+        superRefsOffset = nameRefsOffset + 4 * classCount;
+        interfaceStartsOffset = superRefsOffset + 4 * classCount;
+        interfaceRefsOffset = interfaceStartsOffset + 4 * (classCount + 1);
+        accessFlagsOffset = interfaceRefsOffset + 4 * interfaceRefCount;
+        majorVersionsOffset = accessFlagsOffset + 2 * classCount;
+        minorVersionsOffset = majorVersionsOffset + 2 * classCount;
+        stringOffsetsOffset = (minorVersionsOffset + 2 * classCount + 3) & ~3;
+        if ((long) stringOffsetsOffset + 4L * stringCount > buffer.limit()) {
+            throw new IOException("Class index file is truncated");
+        }
+    }
+
+    /**
+     * Map index file.
+     * @param file index file.
+     * @return opened index.
+     * @throws IOException if the file can't be read or isn't the class index.
+     */
+    public static ClassIndexFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new ClassIndexFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Read index from the buffer, e.g. from the resource loaded into memory.
+     * @param buffer buffer with the index, starting at position 0.
+     * @return opened index.
+     * @throws IOException if the buffer doesn't contain the class index.
+     */
+    public static ClassIndexFile open(ByteBuffer buffer) throws IOException {
+        return new ClassIndexFile(buffer.duplicate());
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * Find the class.
+     * @param canonicalName class name in the internal form, e.g. <code>java/lang/Object</code>.
+     * @return index of the class or <code>-1</code> if there is no such class.
+     */
+    public int indexOf(String canonicalName) {
+        byte[] key = encode(canonicalName);
+        if (key == null) {
+            return -1;
+        }
+        int low = 0;
+        int high = classCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = compare(buffer.getInt(nameRefsOffset + 4 * mid), key);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public String getCanonicalName(int index) {
+        return getString(buffer.getInt(nameRefsOffset + 4 * checkIndex(index)));
+    }
+
+    /**
+     * Get class name without decoding it.
+     * @param index index of the class.
+     * @return name bytes view.
+     */
+    public Utf8 getCanonicalNameUtf8(int index) {
+        return getUtf8(buffer.getInt(nameRefsOffset + 4 * checkIndex(index)));
+    }
+
+    /**
+     * Get super class name.
+     * @param index index of the class.
+     * @return super class name or <code>null</code> if there is no super class.
+     */
+    public String getSuperClassCanonicalName(int index) {
+        int ref = buffer.getInt(superRefsOffset + 4 * checkIndex(index));
+        return ref >= 0 ? getString(ref) : null;
+    }
+
+    /**
+     * Get super class name of the class.
+     * @param canonicalName class name.
+     * @return super class name or <code>null</code> if there is no such class or it has no super class.
+     */
+    public String getSuperClassCanonicalName(String canonicalName) {
+        int index = indexOf(canonicalName);
+        return index >= 0 ? getSuperClassCanonicalName(index) : null;
+    }
+
+    public List<String> getInterfaceNames(int index) {
+        checkIndex(index);
+        final int start = buffer.getInt(interfaceStartsOffset + 4 * index);
+        final int size = buffer.getInt(interfaceStartsOffset + 4 * (index + 1)) - start;
+        return new AbstractList<String>() {
+            @Override
+            public String get(int i) {
+                if (i < 0 || i >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + i + ", size: " + size);
+                }
+                return getString(buffer.getInt(interfaceRefsOffset + 4 * (start + i)));
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    public int getAccessFlags(int index) {
+        return buffer.getShort(accessFlagsOffset + 2 * checkIndex(index)) & 0xFFFF;
+    }
+
+    public int getMajorVersion(int index) {
+        return buffer.getShort(majorVersionsOffset + 2 * checkIndex(index)) & 0xFFFF;
+    }
+
+    public int getMinorVersion(int index) {
+        return buffer.getShort(minorVersionsOffset + 2 * checkIndex(index)) & 0xFFFF;
+    }
+
+    /**
+     * Decode all properties of the class.
+     * @param index index of the class.
+     * @return class summary.
+     */
+    public ClassSummary getSummary(int index) {
+        List<String> interfaces = getInterfaceNames(index);
+        return new ClassSummary(getCanonicalName(index), getSuperClassCanonicalName(index),
+                interfaces.toArray(new String[interfaces.size()]),
+                getMajorVersion(index), getMinorVersion(index), getAccessFlags(index));
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= classCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + classCount);
+        }
+        return index;
+    }
+
+    private String getString(int ref) {
+        int offset = buffer.getInt(stringOffsetsOffset + 4 * ref);
+        return ModifiedUtf8.decode(buffer, offset + 2, buffer.getShort(offset) & 0xFFFF);
+    }
+
+    private Utf8 getUtf8(int ref) {
+        int offset = buffer.getInt(stringOffsetsOffset + 4 * ref);
+        return new Utf8(buffer, offset + 2, buffer.getShort(offset) & 0xFFFF);
+    }
+
+    /**
+     * Compare stored string with the encoded key (with the length prefix) by the unsigned bytes.
+     */
+    private int compare(int ref, byte[] key) {
+        int offset = buffer.getInt(stringOffsetsOffset + 4 * ref);
+        int length = buffer.getShort(offset) & 0xFFFF;
+        int keyLength = key.length - 2;
+        int common = Math.min(length, keyLength);
+        for (int i = 0; i < common; i++) {
+            int d = (buffer.get(offset + 2 + i) & 0xFF) - (key[i + 2] & 0xFF);
+            if (d != 0) {
+                return d;
+            }
+        }
+        return length - keyLength;
+    }
+
+    private static byte[] encode(String s) {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(s.length() + 2);
+        try {
+            new DataOutputStream(encoded).writeUTF(s);
+        } catch (IOException ex) {
+            // Too long for the class name, can't be in the index.
+            return null;
+        }
+        return encoded.toByteArray();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.index;
+
+import org.aalabs.sjcp.JavaClassFile;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Writer of the class index file read by {@link ClassIndexFile}.
+ * <p>
+ * The file is columnar: every property of the classes is stored as a separate array and all
+ * names are kept once in the string table in the modified UTF-8 encoding, the same as in the
+ * class files. Classes are sorted by name so the reader can find them by binary search.
+ * If several classes have the same name the first added one is written.
+ * @author Andrew Porokhin
+ */
+public class ClassIndexWriter {
+    static final int MAGIC = 0x534A4349;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_LENGTH = 20;
+
+    private final Map<String, ClassSummary> classes = new LinkedHashMap<String, ClassSummary>();
+
+    /**
+     * Add parsed class. The class must not be parsed in the header-only mode.
+     * @param classFile parsed class.
+     */
+    public void add(JavaClassFile classFile) {
+        add(ClassSummary.of(classFile));
+    }
+
+    /**
+     * Add class summary.
+     * @param summary class summary.
+     */
+    public void add(ClassSummary summary) {
+        if (!classes.containsKey(summary.getCanonicalName())) {
+            classes.put(summary.getCanonicalName(), summary);
+        }
+    }
+
+    /**
+     * Add class summaries.
+     * @param summaries class summaries.
+     */
+    public void addAll(Collection<ClassSummary> summaries) {
+        for (ClassSummary summary : summaries) {
+            add(summary);
+        }
+    }
+
+    /**
+     * Write index file.
+     * @param file index file.
+     * @throws IOException if the file can't be written.
+     */
+    public void write(Path file) throws IOException {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 65536);
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write index to the stream.
+     * @param stream output stream.
+     * @throws IOException if the index can't be written.
+     */
+    public void write(OutputStream stream) throws IOException {
+        // Strings are numbered in the order of first use, encoded the way writeUTF does.
+        Map<String, Integer> stringIds = new HashMap<String, Integer>();
+        List<byte[]> strings = new ArrayList<byte[]>();
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(256);
+        DataOutputStream encoder = new DataOutputStream(encoded);
+
+        List<byte[]> names = new ArrayList<byte[]>(classes.size());
+        List<ClassSummary> summaries = new ArrayList<ClassSummary>(classes.values());
+        for (ClassSummary summary : summaries) {
+            int id = stringId(summary.getCanonicalName(), stringIds, strings, encoded, encoder);
+            names.add(strings.get(id));
+        }
+
+        Integer[] order = new Integer[summaries.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        final List<byte[]> sortNames = names;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return compareEncoded(sortNames.get(a), sortNames.get(b));
+            }
+        });
+
+        int count = order.length;
+        int[] nameRefs = new int[count];
+        int[] superRefs = new int[count];
+        int[] interfaceStarts = new int[count + 1];
+        List<Integer> interfaceRefs = new ArrayList<Integer>();
+        for (int i = 0; i < count; i++) {
+            ClassSummary summary = summaries.get(order[i]);
+            nameRefs[i] = stringIds.get(summary.getCanonicalName());
+            String superName = summary.getSuperClassCanonicalName();
+            superRefs[i] = superName != null ? stringId(superName, stringIds, strings, encoded, encoder) : -1;
+            interfaceStarts[i] = interfaceRefs.size();
+            for (String name : summary.getInterfaceNames()) {
+                interfaceRefs.add(stringId(name, stringIds, strings, encoded, encoder));
+            }
+        }
+        interfaceStarts[count] = interfaceRefs.size();
+
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(count);
+        out.writeInt(strings.size());
+        out.writeInt(interfaceRefs.size());
+        writeInts(out, nameRefs);
+        writeInts(out, superRefs);
+        writeInts(out, interfaceStarts);
+        for (int ref : interfaceRefs) {
+            out.writeInt(ref);
+        }
+        for (int i = 0; i < count; i++) {
+            out.writeShort(summaries.get(order[i]).getAccessFlags());
+        }
+        for (int i = 0; i < count; i++) {
+            out.writeShort(summaries.get(order[i]).getMajorVersion());
+        }
+        for (int i = 0; i < count; i++) {
+            out.writeShort(summaries.get(order[i]).getMinorVersion());
+        }
+        if ((count * 3) % 2 != 0) {
+            // Keep the string offsets aligned.
+            out.writeShort(0);
+        }
+
+        int offset = out.size() + 4 * strings.size();
+        for (byte[] s : strings) {
+            out.writeInt(offset);
+            offset += s.length;
+        }
+        for (byte[] s : strings) {
+            out.write(s);
+        }
+        out.flush();
+    }
+
+    private static int stringId(String s, Map<String, Integer> stringIds, List<byte[]> strings,
+                                ByteArrayOutputStream encoded, DataOutputStream encoder) throws IOException {
+        Integer id = stringIds.get(s);
+        if (id == null) {
+            encoded.reset();
+            encoder.writeUTF(s);
+            id = strings.size();
+            strings.add(encoded.toByteArray());
+            stringIds.put(s, id);
+        }
+        return id;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * Compare encoded strings (with the length prefix) by the unsigned bytes.
+     */
+    static int compareEncoded(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 2; i < length; i++) {
+            int d = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (d != 0) {
+                return d;
+            }
+        }
+        return a.length - b.length;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.index;
+
+import org.aalabs.sjcp.JavaClassFile;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Summary of the parsed Java class: names, versions and access flags.
+ * The summary doesn't hold the class file data and is cheap to keep for whole classpaths.
+ * @author Andrew Porokhin
+ */
+public final class ClassSummary {
+    private static final String[] NO_INTERFACES = new String[0];
+
+    private final String canonicalName;
+    private final String superClassCanonicalName;
+    private final String[] interfaceNames;
+    private final int majorVersion;
+    private final int minorVersion;
+    private final int accessFlags;
+
+    /**
+     * Create summary.
+     * @param canonicalName class name.
+     * @param superClassCanonicalName super class name, <code>null</code> if there is no super class.
+     * @param interfaceNames names of the directly implemented interfaces.
+     * @param majorVersion major version of the class file.
+     * @param minorVersion minor version of the class file.
+     * @param accessFlags access flags of the class.
+     */
+    public ClassSummary(String canonicalName, String superClassCanonicalName, String[] interfaceNames,
+                        int majorVersion, int minorVersion, int accessFlags) {
+        this.canonicalName = canonicalName;
+        this.superClassCanonicalName = superClassCanonicalName;
+        this.interfaceNames = interfaceNames.length == 0 ? NO_INTERFACES : interfaceNames.clone();
+        this.majorVersion = majorVersion;
+        this.minorVersion = minorVersion;
+        this.accessFlags = accessFlags;
+    }
+
+    /**
+     * Create summary of the parsed class. The class must not be parsed in the header-only mode.
+     * @param classFile parsed class.
+     * @return class summary.
+     */
+    public static ClassSummary of(JavaClassFile classFile) {
+        List<String> interfaces = classFile.getInterfaceNames();
+        return new ClassSummary(classFile.getCanonicalName(), classFile.getSuperClassCanonicalName(),
+                interfaces.toArray(new String[interfaces.size()]),
+                classFile.getMajorVersion(), classFile.getMinorVersion(), classFile.getAccessFlags());
+    }
+
+    public String getCanonicalName() {
+        return canonicalName;
+    }
+
+    public String getSuperClassCanonicalName() {
+        return superClassCanonicalName;
+    }
+
+    public List<String> getInterfaceNames() {
+        return Collections.unmodifiableList(Arrays.asList(interfaceNames));
+    }
+
+    public int getMajorVersion() {
+        return majorVersion;
+    }
+
+    public int getMinorVersion() {
+        return minorVersion;
+    }
+
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ClassSummary)) {
+            return false;
+        }
+        ClassSummary other = (ClassSummary) o;
+        return majorVersion == other.majorVersion
+                && minorVersion == other.minorVersion
+                && accessFlags == other.accessFlags
+                && canonicalName.equals(other.canonicalName)
+                && (superClassCanonicalName == null
+                    ? other.superClassCanonicalName == null
+                    : superClassCanonicalName.equals(other.superClassCanonicalName))
+                && Arrays.equals(interfaceNames, other.interfaceNames);
+    }
+
+    @Override
+    public int hashCode() {
+        return canonicalName.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(canonicalName);
+        if (superClassCanonicalName != null) {
+            sb.append(" extends ").append(superClassCanonicalName);
+        }
+        if (interfaceNames.length > 0) {
+            sb.append(" implements ").append(Arrays.toString(interfaceNames));
+        }
+        sb.append(" [").append(majorVersion).append(".").append(minorVersion).append("]");
+        return sb.toString();
+    }
+}
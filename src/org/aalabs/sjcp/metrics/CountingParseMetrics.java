@@ -0,0 +1,182 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Metrics kept in the counters. Throughput is measured against the wall time since the
+ * metrics were created or {@link #reset()}.
+ * @author Andrew Porokhin
+ */
+public class CountingParseMetrics extends ParseMetrics {
+    private static final Function<String, LongAdder> NEW_COUNTER = new Function<String, LongAdder>() {
+        @Override
+        public LongAdder apply(String name) {
+            return new LongAdder();
+        }
+    };
+
+    private final LongAdder classes = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder[] phaseNanos = new LongAdder[Phase.values().length];
+    private final LongAdder[] constants = new LongAdder[TAG_COUNT];
+    private final ConcurrentHashMap<String, LongAdder> failuresByCause = new ConcurrentHashMap<String, LongAdder>();
+    private volatile long startNanos = System.nanoTime();
+
+    public CountingParseMetrics() {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new LongAdder();
+        }
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void classParsed(int length, long nanos) {
+        classes.increment();
+        bytes.add(length);
+        parseNanos.add(nanos);
+    }
+
+    @Override
+    public void phaseCompleted(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()].add(nanos);
+    }
+
+    @Override
+    public void constantsRead(int[] countsByTag) {
+        for (int tag = 0; tag < TAG_COUNT; tag++) {
+            if (countsByTag[tag] != 0) {
+                constants[tag].add(countsByTag[tag]);
+            }
+        }
+    }
+
+    @Override
+    public void classFailed(Throwable cause) {
+        failures.increment();
+        failuresByCause.computeIfAbsent(cause.getClass().getName(), NEW_COUNTER).increment();
+    }
+
+    /**
+     * Reset all counters and the throughput start time.
+     */
+    public void reset() {
+        classes.reset();
+        bytes.reset();
+        parseNanos.reset();
+        failures.reset();
+        for (LongAdder adder : phaseNanos) {
+            adder.reset();
+        }
+        for (LongAdder adder : constants) {
+            adder.reset();
+        }
+        failuresByCause.clear();
+        startNanos = System.nanoTime();
+    }
+
+    public long getClassCount() {
+        return classes.sum();
+    }
+
+    public long getByteCount() {
+        return bytes.sum();
+    }
+
+    /**
+     * Get total time spent in parsing, summed over all threads.
+     * @return parse time in nanoseconds.
+     */
+    public long getParseNanos() {
+        return parseNanos.sum();
+    }
+
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()].sum();
+    }
+
+    /**
+     * Get number of the read constants with the tag.
+     * @param tag constant pool tag.
+     * @return number of the constants.
+     */
+    public long getConstantCount(int tag) {
+        return tag >= 0 && tag < TAG_COUNT ? constants[tag].sum() : 0;
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * Get failures by the exception class name.
+     * @return snapshot of the failure counts, sorted by name.
+     */
+    public Map<String, Long> getFailuresByCause() {
+        Map<String, Long> snapshot = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> e : failuresByCause.entrySet()) {
+            snapshot.put(e.getKey(), e.getValue().sum());
+        }
+        return snapshot;
+    }
+
+    public double getClassesPerSecond() {
+        return perSecond(classes.sum());
+    }
+
+    public double getBytesPerSecond() {
+        return perSecond(bytes.sum());
+    }
+
+    private double perSecond(long value) {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed > 0 ? value * 1e9 / elapsed : 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("classes=").append(getClassCount());
+        sb.append(", bytes=").append(getByteCount());
+        sb.append(String.format(", classes/s=%.0f, bytes/s=%.0f", getClassesPerSecond(), getBytesPerSecond()));
+        sb.append(", parseMs=").append(getParseNanos() / 1000000);
+        for (Phase phase : Phase.values()) {
+            sb.append(", ").append(phase).append("Ms=").append(getPhaseNanos(phase) / 1000000);
+        }
+        sb.append(", failures=").append(getFailuresByCause());
+        return sb.toString();
+    }
+}
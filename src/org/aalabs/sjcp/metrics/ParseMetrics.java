@@ -0,0 +1,158 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.metrics;
+
+/**
+ * Receiver of the parsing metrics, installed with
+ * {@link org.aalabs.sjcp.JavaClassReader#setMetrics(ParseMetrics)}.
+ * <p>
+ * Methods are called from the parsing threads and must be thread-safe. When
+ * {@link #isEnabled()} returns <code>false</code> the reader doesn't measure anything,
+ * so {@link #NONE} costs a single volatile read per class.
+ * @author Andrew Porokhin
+ */
+public abstract class ParseMetrics {
+    /**
+     * Parsing phase. Members and attributes are read on demand, so their phases are reported
+     * when they are first requested, not when the class is parsed.
+     */
+    public enum Phase {
+        /** Fixed header fields, or the whole header-only parse. */
+        HEADER,
+        /** Reading or indexing of the constant pool. */
+        CONSTANT_POOL,
+        /** Reading of the fields and methods tables. */
+        MEMBERS,
+        /** Reading of the class attributes. */
+        ATTRIBUTES
+    }
+
+    /**
+     * Length of the array passed to {@link #constantsRead(int[])}: the largest tag plus one.
+     */
+    public static final int TAG_COUNT = 21;
+
+    /**
+     * Metrics which are not collected.
+     */
+    public static final ParseMetrics NONE = new ParseMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void classParsed(int length, long nanos) {
+        }
+
+        @Override
+        public void phaseCompleted(Phase phase, long nanos) {
+        }
+
+        @Override
+        public void constantsRead(int[] countsByTag) {
+        }
+
+        @Override
+        public void classFailed(Throwable cause) {
+        }
+    };
+
+    /**
+     * Check if the metrics should be measured at all.
+     * @return <code>true</code> if the metrics are collected.
+     */
+    public boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Called when the class is parsed.
+     * @param length length of the data the class was parsed from, in bytes.
+     * @param nanos parse time.
+     */
+    public abstract void classParsed(int length, long nanos);
+
+    /**
+     * Called when the parsing phase is completed.
+     * @param phase parsing phase.
+     * @param nanos phase time.
+     */
+    public abstract void phaseCompleted(Phase phase, long nanos);
+
+    /**
+     * Called when the constant pool of the class is read.
+     * @param countsByTag numbers of the constants indexed by tag, {@link #TAG_COUNT} elements.
+     *                    The array is only valid during the call.
+     */
+    public abstract void constantsRead(int[] countsByTag);
+
+    /**
+     * Called when the class can't be read or parsed.
+     * @param cause failure cause.
+     */
+    public abstract void classFailed(Throwable cause);
+
+    /**
+     * Combine two metrics, e.g. counters and JFR events.
+     * @param first first metrics.
+     * @param second second metrics.
+     * @return metrics passing all calls to both metrics.
+     */
+    public static ParseMetrics combine(final ParseMetrics first, final ParseMetrics second) {
+        return new ParseMetrics() {
+            @Override
+            public boolean isEnabled() {
+                return first.isEnabled() || second.isEnabled();
+            }
+
+            @Override
+            public void classParsed(int length, long nanos) {
+                first.classParsed(length, nanos);
+                second.classParsed(length, nanos);
+            }
+
+            @Override
+            public void phaseCompleted(Phase phase, long nanos) {
+                first.phaseCompleted(phase, nanos);
+                second.phaseCompleted(phase, nanos);
+            }
+
+            @Override
+            public void constantsRead(int[] countsByTag) {
+                first.constantsRead(countsByTag);
+                second.constantsRead(countsByTag);
+            }
+
+            @Override
+            public void classFailed(Throwable cause) {
+                first.classFailed(cause);
+                second.classFailed(cause);
+            }
+        };
+    }
+}
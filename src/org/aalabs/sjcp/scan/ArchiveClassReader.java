@@ -0,0 +1,415 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.scan;
+
+import org.aalabs.sjcp.JavaClassFile;
+import org.aalabs.sjcp.JavaClassHeader;
+import org.aalabs.sjcp.JavaClassReader;
+import org.aalabs.sjcp.cp.SymbolTable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reader of the class files stored in jar, zip and jmod archives.
+ * <p>
+ * Stored (uncompressed) entries are parsed straight from the memory-mapped archive.
+ * Compressed entries are inflated once into the array the class is parsed from, except for
+ * {@link #readHeader(ClassEntry, SymbolTable)}, which parses the entry stream and stops at
+ * <code>super_class</code>. For multi-release jars only the entry with the highest version
+ * supported by the selected release is returned for every class.
+ * <p>
+ * Reader is thread-safe, entries can be read concurrently.
+ * @author Andrew Porokhin
+ */
+public class ArchiveClassReader implements Closeable {
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String JMOD_CLASSES = "classes/";
+    private static final String VERSIONS = "META-INF/versions/";
+    private static final Attributes.Name MULTI_RELEASE = new Attributes.Name("Multi-Release");
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    /**
+     * Class entry of the archive.
+     */
+    public static final class ClassEntry {
+        private final String name;
+        private final ZipEntry zipEntry;
+        private final int version;
+
+        ClassEntry(String name, ZipEntry zipEntry, int version) {
+            this.name = name;
+            this.zipEntry = zipEntry;
+            this.version = version;
+        }
+
+        /**
+         * Get class file name without versioned or jmod prefix, e.g. <code>java/lang/Object.class</code>.
+         * @return class file name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get archive entry.
+         * @return archive entry.
+         */
+        public ZipEntry getZipEntry() {
+            return zipEntry;
+        }
+
+        /**
+         * Get multi-release version of the entry.
+         * @return version or 0 for the base entry.
+         */
+        public int getVersion() {
+            return version;
+        }
+    }
+
+    private final ZipFile zipFile;
+    private final int release;
+    private final List<ClassEntry> classEntries;
+    /** Mapped archive or <code>null</code> if it can't be mapped. */
+    private final ByteBuffer mapped;
+    /** Absolute offsets of the stored entries data in the mapped archive. */
+    private final Map<String, Integer> storedDataOffsets;
+
+    /**
+     * Open archive using release of the running JVM for multi-release jars.
+     * @param file jar, zip or jmod file.
+     * @throws IOException if the archive can't be read.
+     */
+    public ArchiveClassReader(File file) throws IOException {
+        this(file, getRuntimeRelease());
+    }
+
+    /**
+     * Open archive.
+     * @param file jar, zip or jmod file.
+     * @param release Java release used to select entries of multi-release jars.
+     * @throws IOException if the archive can't be read.
+     */
+    public ArchiveClassReader(File file, int release) throws IOException {
+        this.zipFile = new ZipFile(file);
+        this.release = release;
+        try {
+            this.classEntries = Collections.unmodifiableList(collectClassEntries(file.getName().endsWith(".jmod")));
+            ByteBuffer buffer = null;
+            Map<String, Integer> offsets = Collections.emptyMap();
+            if (file.length() <= Integer.MAX_VALUE) {
+                FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                try {
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                } finally {
+                    channel.close();
+                }
+                offsets = readStoredDataOffsets(buffer);
+                if (offsets == null) {
+                    // Zip64 or unexpected layout, use entry streams only.
+                    buffer = null;
+                    offsets = Collections.emptyMap();
+                }
+            }
+            this.mapped = buffer;
+            this.storedDataOffsets = offsets;
+        } catch (IOException ex) {
+            zipFile.close();
+            throw ex;
+        } catch (RuntimeException ex) {
+            zipFile.close();
+            throw ex;
+        }
+    }
+
+    public String getName() {
+        return zipFile.getName();
+    }
+
+    /**
+     * Get class entries of the archive, one entry per class.
+     * @return unmodifiable list of class entries.
+     */
+    public List<ClassEntry> getClassEntries() {
+        return classEntries;
+    }
+
+    /**
+     * Get data of the stored entry from the mapped archive.
+     * @param entry class entry.
+     * @return read-only buffer with the entry data or <code>null</code> if the entry is compressed.
+     */
+    public ByteBuffer getStoredData(ClassEntry entry) {
+        Integer offset = storedDataOffsets.get(entry.getZipEntry().getName());
+        if (offset == null) {
+            return null;
+        }
+        ByteBuffer data = mapped.duplicate();
+        data.position(offset);
+        data.limit(offset + (int) entry.getZipEntry().getSize());
+        return data.slice();
+    }
+
+    /**
+     * Get data of the class entry: a slice of the mapped archive for stored entries, inflated
+     * array for compressed ones.
+     * @param entry class entry.
+     * @return buffer with the class file.
+     * @throws IOException if the entry can't be read.
+     */
+    public ByteBuffer getData(ClassEntry entry) throws IOException {
+        ByteBuffer data = getStoredData(entry);
+        if (data != null) {
+            return data;
+        }
+
+        ZipEntry zipEntry = entry.getZipEntry();
+        long size = zipEntry.getSize();
+        if (size < 0 || size > Integer.MAX_VALUE) {
+            throw new IOException("Unsupported entry size: " + size);
+        }
+        // Inflate directly into the array the class is parsed from.
+        byte[] bytes = new byte[(int) size];
+        InputStream in = zipFile.getInputStream(zipEntry);
+        try {
+            new DataInputStream(in).readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Parse class entry.
+     * @param entry class entry.
+     * @param mode how much of the class file to parse.
+     * @return parsed class.
+     * @throws IOException if the entry can't be read.
+     */
+    public JavaClassFile read(ClassEntry entry, ClassScanner.Mode mode) throws IOException {
+        return ClassScanner.parse(getLocation(entry), getData(entry), mode, null);
+    }
+
+    /**
+     * Read only the header of the class entry. Compressed entries are parsed from the entry
+     * stream, the rest of the entry after <code>super_class</code> is never inflated.
+     * @param entry class entry.
+     * @param symbolTable table of shared UTF8 strings, may be <code>null</code>.
+     * @return class header.
+     * @throws IOException if the entry can't be read.
+     * @see JavaClassReader#processHeader(InputStream, SymbolTable)
+     */
+    public JavaClassHeader readHeader(ClassEntry entry, SymbolTable symbolTable) throws IOException {
+        ByteBuffer data = getStoredData(entry);
+        if (data != null) {
+            return JavaClassReader.processHeader(data, symbolTable);
+        }
+
+        ZipEntry zipEntry = entry.getZipEntry();
+        long size = zipEntry.getSize();
+        InputStream in = zipFile.getInputStream(zipEntry);
+        try {
+            int bufferSize = size > 0 && size < 8192 ? (int) size : 8192;
+            return JavaClassReader.processHeader(new BufferedInputStream(in, bufferSize), symbolTable);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Get location of the entry: <code>archive!/entry</code>.
+     * @param entry class entry.
+     * @return location string.
+     */
+    public String getLocation(ClassEntry entry) {
+        return zipFile.getName() + "!/" + entry.getZipEntry().getName();
+    }
+
+    public void close() throws IOException {
+        zipFile.close();
+    }
+
+    private List<ClassEntry> collectClassEntries(boolean jmod) throws IOException {
+        boolean multiRelease = !jmod && isMultiRelease();
+        Map<String, ClassEntry> entries = new LinkedHashMap<String, ClassEntry>();
+
+        Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+        while (zipEntries.hasMoreElements()) {
+            ZipEntry zipEntry = zipEntries.nextElement();
+            String name = zipEntry.getName();
+            if (zipEntry.isDirectory() || !name.endsWith(CLASS_SUFFIX)) {
+                continue;
+            }
+
+            int version = 0;
+            if (jmod) {
+                if (!name.startsWith(JMOD_CLASSES)) {
+                    continue;
+                }
+                name = name.substring(JMOD_CLASSES.length());
+            } else if (name.startsWith(VERSIONS)) {
+                if (!multiRelease) {
+                    continue;
+                }
+                int slash = name.indexOf('/', VERSIONS.length());
+                if (slash < 0) {
+                    continue;
+                }
+                try {
+                    version = Integer.parseInt(name.substring(VERSIONS.length(), slash));
+                } catch (NumberFormatException ex) {
+                    continue;
+                }
+                if (version < 9 || version > release) {
+                    continue;
+                }
+                name = name.substring(slash + 1);
+            }
+
+            ClassEntry existing = entries.get(name);
+            if (existing == null || existing.getVersion() < version) {
+                entries.put(name, new ClassEntry(name, zipEntry, version));
+            }
+        }
+        return new ArrayList<ClassEntry>(entries.values());
+    }
+
+    private boolean isMultiRelease() throws IOException {
+        ZipEntry manifestEntry = zipFile.getEntry(JarFile.MANIFEST_NAME);
+        if (manifestEntry == null) {
+            return false;
+        }
+        InputStream in = zipFile.getInputStream(manifestEntry);
+        try {
+            Manifest manifest = new Manifest(in);
+            return "true".equalsIgnoreCase(manifest.getMainAttributes().getValue(MULTI_RELEASE));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read central directory of the mapped archive and find data offsets of stored entries.
+     * @return entry name to data offset map or <code>null</code> if the layout is not supported.
+     */
+    private static Map<String, Integer> readStoredDataOffsets(ByteBuffer archive) {
+        ByteBuffer zip = archive.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int end = findEndHeader(zip);
+        if (end < 0) {
+            return null;
+        }
+        int entryCount = zip.getShort(end + 10) & 0xFFFF;
+        long centralSize = zip.getInt(end + 12) & 0xFFFFFFFFL;
+        long centralOffset = zip.getInt(end + 16) & 0xFFFFFFFFL;
+        if (entryCount == 0xFFFF || centralOffset == 0xFFFFFFFFL || centralSize > end) {
+            return null;
+        }
+        // Archives with a prefix (jmod header, launcher stubs) have shifted offsets.
+        int centralStart = end - (int) centralSize;
+        long shift = centralStart - centralOffset;
+
+        Map<String, Integer> offsets = new HashMap<String, Integer>();
+        int offset = centralStart;
+        for (int i = 0; i < entryCount; i++) {
+            if (offset + CENTRAL_HEADER_SIZE > end || zip.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+                return null;
+            }
+            int method = zip.getShort(offset + 10) & 0xFFFF;
+            long compressedSize = zip.getInt(offset + 20) & 0xFFFFFFFFL;
+            int nameLength = zip.getShort(offset + 28) & 0xFFFF;
+            int extraLength = zip.getShort(offset + 30) & 0xFFFF;
+            int commentLength = zip.getShort(offset + 32) & 0xFFFF;
+            long localOffset = (zip.getInt(offset + 42) & 0xFFFFFFFFL) + shift;
+
+            if (method == ZipEntry.STORED && compressedSize != 0xFFFFFFFFL) {
+                int local = (int) localOffset;
+                if (localOffset < 0 || local + LOCAL_HEADER_SIZE > end
+                        || zip.getInt(local) != LOCAL_HEADER_SIGNATURE) {
+                    return null;
+                }
+                int dataOffset = local + LOCAL_HEADER_SIZE
+                        + (zip.getShort(local + 26) & 0xFFFF) + (zip.getShort(local + 28) & 0xFFFF);
+                if (dataOffset + compressedSize <= end) {
+                    offsets.put(readName(zip, offset + CENTRAL_HEADER_SIZE, nameLength), dataOffset);
+                }
+            }
+            offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return offsets;
+    }
+
+    private static int findEndHeader(ByteBuffer zip) {
+        int limit = zip.limit();
+        // The end header is followed by a comment of up to 64K.
+        int min = Math.max(0, limit - END_HEADER_SIZE - 0xFFFF);
+        for (int offset = limit - END_HEADER_SIZE; offset >= min; offset--) {
+            if (zip.getInt(offset) == END_HEADER_SIGNATURE) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    private static String readName(ByteBuffer zip, int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = zip.get(offset + i);
+        }
+        return new String(bytes, UTF8);
+    }
+
+    private static int getRuntimeRelease() {
+        String version = System.getProperty("java.specification.version", "1.8");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        try {
+            return Integer.parseInt(version);
+        } catch (NumberFormatException ex) {
+            return 8;
+        }
+    }
+}
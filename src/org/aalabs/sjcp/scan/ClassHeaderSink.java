@@ -0,0 +1,57 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.scan;
+
+import org.aalabs.sjcp.JavaClassHeader;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receiver of the class headers read by the {@link ClassScanner} header-only scan.
+ * Methods are called concurrently from the scanner worker threads.
+ * @author Andrew Porokhin
+ */
+public abstract class ClassHeaderSink {
+    private static final Logger logger = Logger.getLogger(ClassHeaderSink.class.getName());
+
+    /**
+     * Called for every class header.
+     * @param location class file location: file path or <code>archive!/entry</code>.
+     * @param header class header.
+     */
+    public abstract void headerRead(String location, JavaClassHeader header);
+
+    /**
+     * Called when the class header can't be read or parsed. Default implementation logs the failure.
+     * @param location class file location.
+     * @param cause failure cause.
+     */
+    public void classFailed(String location, Exception cause) {
+        logger.log(Level.WARNING, "Can't read " + location, cause);
+    }
+}
@@ -0,0 +1,481 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.scan;
+
+import org.aalabs.sjcp.ClassFileValidator;
+import org.aalabs.sjcp.JavaClassFile;
+import org.aalabs.sjcp.JavaClassHeader;
+import org.aalabs.sjcp.JavaClassReader;
+import org.aalabs.sjcp.ParseFailure;
+import org.aalabs.sjcp.cp.SymbolTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Parallel scanner of class directories, jar and jmod files.
+ * <p>
+ * Roots are enumerated in the calling thread, every class file is parsed as a separate task
+ * in the {@link ForkJoinPool}. The number of classes that are parsed but not yet consumed by
+ * the sink is bounded, so the scanner can walk classpaths of any size with constant memory.
+ * @author Andrew Porokhin
+ */
+public class ClassScanner {
+    /**
+     * How much of the class file is parsed.
+     */
+    public enum Mode {
+        /** Constant pool entries are decoded on demand. */
+        LAZY,
+        /** Constant pool is decoded eagerly. */
+        FULL
+    }
+
+    private static final String CLASS_SUFFIX = ".class";
+    private static final Object END = new Object();
+
+    private final ForkJoinPool pool;
+    private final int maxInFlight;
+    private Mode mode = Mode.LAZY;
+    private SymbolTable symbolTable = null;
+    private boolean validating = false;
+
+    /**
+     * Create scanner that uses common fork-join pool.
+     */
+    public ClassScanner() {
+        this(ForkJoinPool.commonPool(), 256);
+    }
+
+    /**
+     * Create scanner.
+     * @param pool pool for the parsing tasks.
+     * @param maxInFlight maximum number of classes that are submitted but not yet consumed.
+     */
+    public ClassScanner(ForkJoinPool pool, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.pool = pool;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /**
+     * Set table of UTF8 strings shared by all classes parsed by this scanner.
+     * @param symbolTable symbol table or <code>null</code> to decode strings per class.
+     */
+    public void setSymbolTable(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    public boolean isValidating() {
+        return validating;
+    }
+
+    /**
+     * Enable validation of every class before it is parsed, see {@link ClassFileValidator}.
+     * Broken classes are reported to {@link ClassSink#classFailed(String, ParseFailure)} and
+     * never reach the parser, so a corrupt entry neither aborts the scan nor yields a
+     * desynchronized class.
+     * @param validating <code>true</code> to validate classes.
+     */
+    public void setValidating(boolean validating) {
+        this.validating = validating;
+    }
+
+    /**
+     * Scan roots and pass every class to the sink. Returns when all classes are consumed.
+     * @param roots class directories, class files, jar, zip or jmod files.
+     * @param sink receiver of the parsed classes, must be thread-safe.
+     * @throws IOException if a root can't be read.
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    public void scan(Collection<File> roots, final ClassSink sink) throws IOException, InterruptedException {
+        final Mode mode = this.mode;
+        final SymbolTable symbolTable = this.symbolTable;
+        final boolean validating = this.validating;
+        scanData(roots, new ClassDataSink() {
+            @Override
+            public void classRead(String location, ByteBuffer data) {
+                if (validating) {
+                    ParseFailure failure = ClassFileValidator.validate(data);
+                    if (failure != null) {
+                        sink.classFailed(location, failure);
+                        return;
+                    }
+                }
+                JavaClassFile classFile;
+                try {
+                    classFile = parse(location, data, mode, symbolTable);
+                } catch (RuntimeException ex) {
+                    if (validating) {
+                        sink.classFailed(location, ParseFailure.of(ParseFailure.Kind.PARSE_ERROR, ex));
+                    } else {
+                        sink.classFailed(location, ex);
+                    }
+                    return;
+                }
+                sink.classParsed(location, classFile);
+            }
+
+            @Override
+            public void classFailed(String location, Exception cause) {
+                if (validating) {
+                    sink.classFailed(location, ParseFailure.of(ParseFailure.Kind.READ_ERROR, cause));
+                } else {
+                    sink.classFailed(location, cause);
+                }
+            }
+        });
+    }
+
+    /**
+     * Scan roots and pass data of every class file to the sink without parsing it.
+     * Returns when all classes are consumed.
+     * @param roots class directories, class files, jar, zip or jmod files.
+     * @param sink receiver of the class file data, must be thread-safe.
+     * @throws IOException if a root can't be read.
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    public void scanData(Collection<File> roots, ClassDataSink sink) throws IOException, InterruptedException {
+        scanRoots(roots, new Target(sink, null, null, new Semaphore(maxInFlight)));
+    }
+
+    /**
+     * Scan roots and pass only the header of every class to the sink: versions, access flags,
+     * class and super class names. Headers of the compressed archive entries are read from the
+     * entry stream, the rest of the entry is never inflated. Classes are not validated even if
+     * validation is enabled. Returns when all headers are consumed.
+     * @param roots class directories, class files, jar, zip or jmod files.
+     * @param sink receiver of the class headers, must be thread-safe.
+     * @throws IOException if a root can't be read.
+     * @throws InterruptedException if the calling thread is interrupted.
+     * @see JavaClassReader#processHeader(ByteBuffer)
+     */
+    public void scanHeaders(Collection<File> roots, ClassHeaderSink sink) throws IOException, InterruptedException {
+        scanRoots(roots, new Target(null, sink, symbolTable, new Semaphore(maxInFlight)));
+    }
+
+    private void scanRoots(Collection<File> roots, Target target) throws IOException, InterruptedException {
+        List<ArchiveClassReader> archives = new ArrayList<ArchiveClassReader>();
+        try {
+            for (File root : roots) {
+                if (root.isDirectory()) {
+                    scanDirectory(root.toPath(), target);
+                } else if (root.getName().endsWith(CLASS_SUFFIX)) {
+                    submit(new FileTask(root.toPath(), target));
+                } else {
+                    ArchiveClassReader archive = new ArchiveClassReader(root);
+                    archives.add(archive);
+                    scanArchive(archive, target);
+                }
+            }
+        } finally {
+            // Wait for the submitted tasks before closing the archives.
+            target.inFlight.acquireUninterruptibly(maxInFlight);
+            for (ArchiveClassReader archive : archives) {
+                archive.close();
+            }
+        }
+    }
+
+    /**
+     * Scan roots in the background and return stream of the parsed classes.
+     * Classes that can't be parsed are logged and skipped. The stream must be closed,
+     * closing it early stops the scan.
+     * @param roots class directories, class files, jar, zip or jmod files.
+     * @return stream of the parsed classes.
+     */
+    public Stream<JavaClassFile> stream(final Collection<File> roots) {
+        final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(maxInFlight);
+        final AtomicBoolean closed = new AtomicBoolean();
+        final Thread producer = new Thread("ClassScanner") {
+            @Override
+            public void run() {
+                Object last = END;
+                try {
+                    scan(roots, new ClassSink() {
+                        @Override
+                        public void classParsed(String location, JavaClassFile classFile) {
+                            try {
+                                while (!closed.get()) {
+                                    if (queue.offer(classFile, 100, TimeUnit.MILLISECONDS)) {
+                                        return;
+                                    }
+                                }
+                            } catch (InterruptedException ex) {
+                                // Worker is shutting down, drop the class.
+                            }
+                        }
+                    });
+                } catch (IOException ex) {
+                    last = new UncheckedIOException(ex);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                try {
+                    while (!closed.get()) {
+                        if (queue.offer(last, 100, TimeUnit.MILLISECONDS)) {
+                            return;
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                    // Stream is closed.
+                }
+            }
+        };
+        producer.setDaemon(true);
+        producer.start();
+
+        Iterator<JavaClassFile> iterator = new Iterator<JavaClassFile>() {
+            private Object next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = queue.take();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        next = END;
+                    }
+                }
+                if (next instanceof RuntimeException) {
+                    throw (RuntimeException) next;
+                }
+                return next != END;
+            }
+
+            @Override
+            public JavaClassFile next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                JavaClassFile classFile = (JavaClassFile) next;
+                next = null;
+                return classFile;
+            }
+        };
+        Spliterator<JavaClassFile> spliterator = Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+            @Override
+            public void run() {
+                closed.set(true);
+                producer.interrupt();
+                queue.clear();
+            }
+        });
+    }
+
+    private void scanDirectory(Path directory, final Target target) throws IOException, InterruptedException {
+        final InterruptedException[] interrupted = new InterruptedException[1];
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && file.getFileName().toString().endsWith(CLASS_SUFFIX)) {
+                    try {
+                        submit(new FileTask(file, target));
+                    } catch (InterruptedException ex) {
+                        interrupted[0] = ex;
+                        return FileVisitResult.TERMINATE;
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        if (interrupted[0] != null) {
+            throw interrupted[0];
+        }
+    }
+
+    private void scanArchive(ArchiveClassReader archive, Target target) throws InterruptedException {
+        for (ArchiveClassReader.ClassEntry entry : archive.getClassEntries()) {
+            submit(new ArchiveEntryTask(archive, entry, target));
+        }
+    }
+
+    private void submit(ReadTask task) throws InterruptedException {
+        task.target.inFlight.acquire();
+        pool.execute(task);
+    }
+
+    static JavaClassFile parse(String location, ByteBuffer buffer, Mode mode, SymbolTable symbolTable) {
+        switch (mode) {
+            case FULL:
+                return JavaClassReader.processBuffer(buffer, false, symbolTable, location);
+            default:
+                return JavaClassReader.processBuffer(buffer, true, symbolTable, location);
+        }
+    }
+
+    /**
+     * Receiver of one scan: either the data sink or the header sink is set.
+     */
+    private static final class Target {
+        final ClassDataSink dataSink;
+        final ClassHeaderSink headerSink;
+        final SymbolTable symbolTable;
+        final Semaphore inFlight;
+
+        Target(ClassDataSink dataSink, ClassHeaderSink headerSink, SymbolTable symbolTable, Semaphore inFlight) {
+            this.dataSink = dataSink;
+            this.headerSink = headerSink;
+            this.symbolTable = symbolTable;
+            this.inFlight = inFlight;
+        }
+    }
+
+    /**
+     * Read task, releases in-flight permit when the class data or header is passed to the sink.
+     */
+    private abstract class ReadTask implements Runnable {
+        final Target target;
+
+        ReadTask(Target target) {
+            this.target = target;
+        }
+
+        abstract String getLocation();
+
+        abstract ByteBuffer read() throws IOException;
+
+        abstract JavaClassHeader readHeader(SymbolTable symbolTable) throws IOException;
+
+        @Override
+        public void run() {
+            try {
+                if (target.headerSink != null) {
+                    runHeader(target.headerSink);
+                } else {
+                    runData(target.dataSink);
+                }
+            } finally {
+                target.inFlight.release();
+            }
+        }
+
+        private void runData(ClassDataSink sink) {
+            ByteBuffer data;
+            try {
+                data = read();
+            } catch (Exception ex) {
+                sink.classFailed(getLocation(), ex);
+                return;
+            }
+            sink.classRead(getLocation(), data);
+        }
+
+        private void runHeader(ClassHeaderSink sink) {
+            JavaClassHeader header;
+            try {
+                header = readHeader(target.symbolTable);
+            } catch (Exception ex) {
+                sink.classFailed(getLocation(), ex);
+                return;
+            }
+            sink.headerRead(getLocation(), header);
+        }
+    }
+
+    private class FileTask extends ReadTask {
+        private final Path file;
+
+        FileTask(Path file, Target target) {
+            super(target);
+            this.file = file;
+        }
+
+        @Override
+        String getLocation() {
+            return file.toString();
+        }
+
+        @Override
+        ByteBuffer read() throws IOException {
+            // Loose class files are small and parsed classes keep their buffer, a mapping per
+            // file would exhaust the process map count on large directories.
+            return ByteBuffer.wrap(Files.readAllBytes(file));
+        }
+
+        @Override
+        JavaClassHeader readHeader(SymbolTable symbolTable) throws IOException {
+            return JavaClassReader.processHeader(read(), symbolTable);
+        }
+    }
+
+    private class ArchiveEntryTask extends ReadTask {
+        private final ArchiveClassReader archive;
+        private final ArchiveClassReader.ClassEntry entry;
+
+        ArchiveEntryTask(ArchiveClassReader archive, ArchiveClassReader.ClassEntry entry, Target target) {
+            super(target);
+            this.archive = archive;
+            this.entry = entry;
+        }
+
+        @Override
+        String getLocation() {
+            return archive.getLocation(entry);
+        }
+
+        @Override
+        ByteBuffer read() throws IOException {
+            return archive.getData(entry);
+        }
+
+        @Override
+        JavaClassHeader readHeader(SymbolTable symbolTable) throws IOException {
+            return archive.readHeader(entry, symbolTable);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2011 Andrew Porokhin. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without modification, are
+ * permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice, this list of
+ *       conditions and the following disclaimer.
+ *
+ *    2. Redistributions in binary form must reproduce the above copyright notice, this list
+ *       of conditions and the following disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY <COPYRIGHT HOLDER> ``AS IS'' AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those of the
+ * authors and should not be interpreted as representing official policies, either expressed
+ * or implied, of Andrew Porokhin.
+ */
+package org.aalabs.sjcp.scan;
+
+import org.aalabs.sjcp.JavaClassFile;
+import org.aalabs.sjcp.ParseFailure;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receiver of the classes parsed by the {@link ClassScanner}.
+ * Methods are called concurrently from the scanner worker threads.
+ * @author Andrew Porokhin
+ */
+public abstract class ClassSink {
+    private static final Logger logger = Logger.getLogger(ClassSink.class.getName());
+
+    /**
+     * Called for every parsed class.
+     * @param location class file location: file path or <code>archive!/entry</code>.
+     * @param classFile parsed class.
+     */
+    public abstract void classParsed(String location, JavaClassFile classFile);
+
+    /**
+     * Called when the class can't be read or parsed. Default implementation logs the failure.
+     * @param location class file location.
+     * @param cause failure cause.
+     */
+    public void classFailed(String location, Exception cause) {
+        logger.log(Level.WARNING, "Can't parse " + location, cause);
+    }
+
+    /**
+     * Called instead of {@link #classFailed(String, Exception)} when the scanner validates
+     * classes: the class can't be read, fails the validation or can't be parsed.
+     * Default implementation passes {@link ParseFailure#toException()} to
+     * {@link #classFailed(String, Exception)}.
+     * @param location class file location.
+     * @param failure failure description.
+     * @see ClassScanner#setValidating(boolean)
+     */
+    public void classFailed(String location, ParseFailure failure) {
+        classFailed(location, failure.toException());
+    }
+}